@@ -113,7 +113,7 @@ public class ChuckPanel extends JPanel implements ItemListener {
                 chuckSketch.setReadOnly(true);
                 chuckSketch.setFillShape(true);
                 mainFrame.chuckChanged(chuck.getName());
-                mainFrame.simView.chuckChanged(chuckSketch.getModel());
+                mainFrame.simView.chuckChanged(chuckSketch);
             }
             else {
                 sketchScene.removeSketch(chuckSketch);
@@ -123,4 +123,138 @@ public class Config {
             return Color.decode("0x" + (String)color);
         return colletFillColor;
     }
+    /**
+       Get the number of threads used to rasterize the simulation view.
+       <p>
+       Defaults to the number of available processors. A value of 1 shades
+       every screen tile on the calling thread.
+       </p>
+    */
+    static public int getRenderThreads() {
+        Object n = map.get("render-threads");
+        if (n instanceof Number && ((Number)n).intValue() > 0)
+            return ((Number)n).intValue();
+        return Runtime.getRuntime().availableProcessors();
+    }
+    /**
+       Get the simulation view's scan conversion method.
+       @return "edge" (the default) or "barycentric"
+    */
+    static public String getSimRaster() {
+        Object method = map.get("sim-raster");
+        if (method instanceof String)
+            return (String)method;
+        return "edge";
+    }
+    /**
+       Get the direction the simulation view's light shines from.
+       <p>
+       The direction is in view coordinates, x right, y up, and z toward the
+       viewer. It's fixed to the camera, the default 0, 0, 1 lights whatever
+       faces the viewer.
+       </p>
+       @return the unit direction as x, y, z
+    */
+    static public double[] getLightDirection() {
+        Object dir = map.get("light-direction");
+        if (dir instanceof List<?> && ((List<?>)dir).size() == 3) {
+            double[] v = new double[3];
+            for (int i=0; i<3; ++i) {
+                Object x = ((List<?>)dir).get(i);
+                if (!(x instanceof Number))
+                    return new double[] {0, 0, 1};
+                v[i] = ((Number)x).doubleValue();
+            }
+            double len = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+            if (len > 0) {
+                v[0] /= len;
+                v[1] /= len;
+                v[2] /= len;
+                return v;
+            }
+        }
+        return new double[] {0, 0, 1};
+    }
+    /**
+       Get the simulation view's render mode while it's being rotated,
+       panned, or zoomed.
+       <p>
+       If the view's own render mode is cheaper it's used instead.
+       </p>
+       @return "wire", "hidden-line", "flat" (the default), or "smooth"
+    */
+    static public String getInteractiveMode() {
+        Object mode = map.get("sim-interactive-mode");
+        if (mode instanceof String)
+            return (String)mode;
+        return "flat";
+    }
+    /**
+       Get the factor the simulation view's resolution is divided by while
+       it's being rotated, panned, or zoomed.
+       <p>
+       Defaults to 2. A value of 1 renders at full resolution.
+       </p>
+    */
+    static public int getInteractiveScale() {
+        Object n = map.get("sim-interactive-scale");
+        if (n instanceof Number && ((Number)n).intValue() > 0)
+            return ((Number)n).intValue();
+        return 2;
+    }
+    /**
+       Get the largest distance, in pixels, a revolved surface drawn in the
+       simulation view may stray from the true one.
+       <p>
+       This picks each mesh's level of detail, see Mesh.lod(). Defaults to
+       0.5. A value of 0 turns level of detail off and draws every mesh as
+       it was made.
+       </p>
+    */
+    static public double getLodTolerance() {
+        Object n = map.get("sim-lod-tolerance");
+        if (n instanceof Number && ((Number)n).doubleValue() >= 0)
+            return ((Number)n).doubleValue();
+        return .5;
+    }
+    /**
+       Get the number of milliseconds the simulation view waits after the
+       last mouse drag or wheel event before rendering at full quality.
+       <p>
+       Defaults to 200.
+       </p>
+    */
+    static public int getRefineDelay() {
+        Object n = map.get("sim-refine-delay");
+        if (n instanceof Number && ((Number)n).intValue() >= 0)
+            return ((Number)n).intValue();
+        return 200;
+    }
+    /**
+       Find if the simulation view skips meshes hidden behind the ones
+       already drawn, see FrameBuffer.isHidden().
+       <p>
+       Defaults to true.
+       </p>
+    */
+    static public boolean getOcclusionCulling() {
+        Object b = map.get("sim-occlusion-culling");
+        if (b instanceof Boolean)
+            return (Boolean)b;
+        return true;
+    }
+    /**
+       Get the most megabytes of revolved meshes kept for sketches to reuse,
+       with the views and levels of detail built from them, see
+       Sketch.revolvePath() and Mesh.memorySize().
+       <p>
+       Defaults to 64. A value of 0 keeps none.
+       </p>
+    */
+    static public int getMeshCacheSize() {
+        Object n = map.get("sim-mesh-cache-mb");
+        if (n instanceof Number && ((Number)n).intValue() >= 0)
+            return ((Number)n).intValue();
+        return 64;
+    }
 }
@@ -11,6 +11,7 @@ import javax.swing.UIManager;
 //
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.io.File;
 import java.io.IOException;
 //
 import org.json.JSONObject;
@@ -26,6 +27,12 @@ class EdGrindRunner implements Runnable {
         System.out.println("EdGrind Comman Line Options\n" +
                            "===========================\n" +
                            "-f, --fullscreen    run full screen\n" +
+                           "-r, --render DIR    write an image of every\n" +
+                           "                    chuck and wheel pack to DIR\n" +
+                           "                    and exit, no GUI\n" +
+                           "--size WxH          --render image size\n" +
+                           "--mode MODE         --render mode: wire,\n" +
+                           "                    hidden-line, flat, smooth\n" +
                            "-h, --help, -?, /?  show this help");
         System.exit(0);
     }
@@ -64,6 +71,9 @@ public class EdGrind {
         // foo();
         // bar();
         // baz();
+        for (String arg : args)
+            if (arg.equals("-r") || arg.equals("--render"))
+                System.exit(render(args));
         try {
             UIManager
                 .setLookAndFeel(UIManager
@@ -83,6 +93,44 @@ public class EdGrind {
             }));
         frame = new MainFrame(fullScreen);
     }
+    /**
+       Run the --render command line mode, see SetupSheets.
+       <p>
+       This must be called before anything touches AWT, so headless can be
+       turned on.
+       </p>
+       @return the process exit status
+    */
+    static int render(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            SetupSheets sheets = null;
+            for (int i=0; i<args.length; ++i) {
+                String arg = args[i];
+                if (arg.equals("-r") || arg.equals("--render"))
+                    sheets = new SetupSheets(new File(args[++i]));
+            }
+            for (int i=0; i<args.length; ++i) {
+                String arg = args[i];
+                if (arg.equals("--size")) {
+                    String[] wh = args[++i].split("x");
+                    sheets.width = Integer.parseInt(wh[0]);
+                    sheets.height = Integer.parseInt(wh[1]);
+                }
+                else if (arg.equals("--mode"))
+                    sheets.mode = RenderMode.valueOf(args[++i].toUpperCase()
+                                                     .replace('-', '_'));
+            }
+            Resource.loadAll();
+            int n = sheets.renderAll();
+            System.out.println(n + " images written");
+            return 0;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
     protected void startup() {
         Resource.loadAll();
     }
@@ -0,0 +1,205 @@
+/*
+  EdgeStage.java
+  S. Edward Dolan
+  Tuesday, December 26 2023
+*/
+
+package edgrind;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+//
+import edgrind.geom.*;
+
+/**
+   Draw the edges of a model using each mesh's EdgeTable.
+   <p>
+   An edge shared by two triangles is drawn once. The wireframe draws every
+   edge touching a front facing triangle. The hidden line mode draws only the
+   silhouette and crease edges and depth tests each of their pixels against a
+   frame buffer that holds the depth of the scene's triangles.
+   </p>
+   <p>
+   A model or mesh whose box is off the screen is skipped. Its clusters
+   aren't culled as the Rasterizer's are, a silhouette needs to know which
+   way both of an edge's triangles face.
+   </p>
+*/
+class EdgeStage {
+    VertexStage vertexStage = new VertexStage();
+    /** Per triangle, true if it faces the viewer. */
+    boolean[] front = new boolean[0];
+    /**
+       Draw every edge of the model that touches a front facing triangle.
+       @param mm the matrix that places this instance of the model
+       @param width, height the size of the image g2 draws on
+    */
+    void drawWire(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm,
+                  Graphics2D g2, int width, int height) {
+        vertexStage.setViewport(width, height);
+        vertexStage.setMatrices(mm.mul(mvm), pjm.mul(nsm));
+        if (vertexStage.classify(model.getBounds()) == VertexStage.OUTSIDE)
+            return;
+        Color oldColor = g2.getColor();
+        g2.setColor(model.getColor());
+        double tol = Rasterizer.chordTolerance(pjm, nsm);
+        for (Mesh mesh : model) {
+            if (tol > 0)
+                mesh = mesh.lod(tol);
+            IndexedMesh im = mesh.getIndexed();
+            if (vertexStage.classify(im.bounds, 0) == VertexStage.OUTSIDE)
+                continue;
+            EdgeTable et = mesh.getEdges();
+            vertexStage.transform(im, false);
+            facing(im);
+            double[] sv = vertexStage.screen;
+            for (int e=0; e<et.size(); ++e) {
+                if (!et.isVisible(e, front))
+                    continue;
+                int i1 = et.verts[e * 2] * 3, i2 = et.verts[e * 2 + 1] * 3;
+                g2.drawLine((int)sv[i1], (int)sv[i1 + 1],
+                            (int)sv[i2], (int)sv[i2 + 1]);
+            }
+        }
+        g2.setColor(oldColor);
+    }
+    /**
+       Draw the model's silhouette and crease edges that are not hidden.
+       <p>
+       The frame buffer's depth plane must already hold the depth of every
+       model in the scene, see Rasterizer.addModelDepth().
+       </p>
+       @param mm the matrix that places this instance of the model
+    */
+    void drawHiddenLines(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm,
+                         FrameBuffer fb) {
+        int rgb = model.getColor().getRGB();
+        vertexStage.setViewport(fb.width, fb.height);
+        vertexStage.setMatrices(mm.mul(mvm), pjm.mul(nsm));
+        if (vertexStage.classify(model.getBounds()) == VertexStage.OUTSIDE)
+            return;
+        double tol = Rasterizer.chordTolerance(pjm, nsm);
+        for (Mesh mesh : model) {
+            if (tol > 0)
+                mesh = mesh.lod(tol);
+            IndexedMesh im = mesh.getIndexed();
+            if (vertexStage.classify(im.bounds, 0) == VertexStage.OUTSIDE)
+                continue;
+            EdgeTable et = mesh.getEdges();
+            vertexStage.transform(im, false);
+            facing(im);
+            double[] sv = vertexStage.screen;
+            for (int e=0; e<et.size(); ++e) {
+                boolean silhouette = et.isSilhouette(e, front);
+                if (!silhouette &&
+                    !((et.flags[e] & EdgeTable.CREASE) != 0 &&
+                      et.isVisible(e, front)))
+                    continue;
+                int i1 = et.verts[e * 2] * 3, i2 = et.verts[e * 2 + 1] * 3;
+                drawLine(fb, sv[i1], sv[i1 + 1], sv[i1 + 2],
+                         sv[i2], sv[i2 + 1], sv[i2 + 2], rgb, silhouette);
+            }
+        }
+    }
+    /**
+       Find which of the mesh's triangles face the viewer.
+       <p>
+       This is the same test the Rasterizer uses to cull back faces.
+       </p>
+    */
+    private void facing(IndexedMesh im) {
+        int nTris = im.nTris();
+        if (front.length < nTris)
+            front = new boolean[nTris];
+        double[] vv = vertexStage.view;
+        int[] vidxs = im.vidxs;
+        for (int t=0; t<nTris; ++t) {
+            int i1 = vidxs[t * 3] * 3;
+            int i2 = vidxs[t * 3 + 1] * 3;
+            int i3 = vidxs[t * 3 + 2] * 3;
+            double ax = vv[i2] - vv[i1], ay = vv[i2 + 1] - vv[i1 + 1];
+            double bx = vv[i3] - vv[i1], by = vv[i3 + 1] - vv[i1 + 1];
+            front[t] = ax * by - ay * bx >= 0;
+        }
+    }
+    /**
+       Draw a depth tested line in screen coordinates.
+       <p>
+       The line is clipped to the frame buffer then stepped one pixel at a
+       time along its major axis.
+       </p>
+       <p>
+       A silhouette edge is usually drawn over pixels covered by the nearly
+       edge-on triangles next to it, or by the triangle beyond those when
+       they're thinner than a pixel. Neither is hiding the edge, so a
+       silhouette pixel is tested against the farthest depth around it.
+       </p>
+    */
+    static void drawLine(FrameBuffer fb,
+                         double x1, double y1, double z1,
+                         double x2, double y2, double z2,
+                         int rgb, boolean silhouette) {
+        double dx = x2 - x1, dy = y2 - y1, dz = z2 - z1;
+        // Liang-Barsky clip of the parameter range [t0, t1]
+        double[] t = {0, 1};
+        double xmax = fb.width - .5, ymax = fb.height - .5;
+        if (!clip(-dx, x1 + .5, t) || !clip(dx, xmax - x1, t) ||
+            !clip(-dy, y1 + .5, t) || !clip(dy, ymax - y1, t))
+            return;
+        double sx = x1 + dx * t[0], sy = y1 + dy * t[0], sz = z1 + dz * t[0];
+        double span = t[1] - t[0];
+        int n = (int)Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) * span);
+        double ix = 0, iy = 0, iz = 0;
+        if (n > 0) {
+            ix = dx * span / n;
+            iy = dy * span / n;
+            iz = dz * span / n;
+        }
+        int[] color = fb.color;
+        for (int s=0; s<=n; ++s) {
+            int x = (int)Math.floor(sx + .5);
+            int y = (int)Math.floor(sy + .5);
+            if (x >= 0 && x < fb.width && y >= 0 && y < fb.height) {
+                int i = y * fb.width + x;
+                if (sz >= (silhouette ? farthest(fb, x, y) : fb.depthAt(i)))
+                    color[i] = rgb;
+            }
+            sx += ix;
+            sy += iy;
+            sz += iz;
+        }
+    }
+    /**
+       Get the farthest depth of the pixel and its eight neighbors.
+    */
+    private static float farthest(FrameBuffer fb, int x, int y) {
+        float d = Float.POSITIVE_INFINITY;
+        for (int j=Math.max(0, y - 1); j<=Math.min(fb.height - 1, y + 1); ++j)
+            for (int i=Math.max(0, x - 1); i<=Math.min(fb.width - 1, x + 1);
+                 ++i)
+                d = Math.min(d, fb.depthAt(j * fb.width + i));
+        return d;
+    }
+    /**
+       Clip one side of the line's parameter range.
+       @return false if the line is entirely outside
+    */
+    private static boolean clip(double p, double q, double[] t) {
+        if (p == 0)
+            return q >= 0;
+        double r = q / p;
+        if (p < 0) {
+            if (r > t[1])
+                return false;
+            if (r > t[0])
+                t[0] = r;
+        }
+        else {
+            if (r < t[0])
+                return false;
+            if (r < t[1])
+                t[1] = r;
+        }
+        return true;
+    }
+}
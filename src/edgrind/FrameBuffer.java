@@ -0,0 +1,249 @@
+/*
+  FrameBuffer.java
+  S. Edward Dolan
+  Wednesday, December 20 2023
+*/
+
+package edgrind;
+
+import java.util.Arrays;
+//
+import java.awt.Color;
+//
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+   The color and depth planes SimView renders into.
+   <p>
+   Both planes are flat, row-major arrays indexed by y * width + x. The color
+   plane is the DataBufferInt backing the image, so pixels are written without
+   going through BufferedImage.setRGB. The image may still be drawn into with
+   its Graphics2D.
+   </p>
+   <p>
+   The depth plane is never filled when it's cleared. Instead each pixel
+   carries the epoch it was last written in and clear() just starts a new
+   epoch. A pixel whose stamp isn't the current epoch holds minDepth.
+   </p>
+   <p>
+   A hierarchical depth pyramid sits over the depth plane. Each cell of
+   level 0 holds the farthest depth of a HIZ_BLOCK square of pixels, each
+   level above holds the farthest of four cells of the one below. It lets
+   isHidden() reject a whole mesh behind what's already been drawn by
+   reading a few cells. The pyramid is only brought up to date by
+   updateHiZ() and reduceHiZ(), until then a cell may be farther than its
+   pixels, which only makes isHidden() say no more often.
+   </p>
+*/
+class FrameBuffer {
+    int width, height;
+    BufferedImage image;
+    /** The image's pixels, 0xAARRGGBB, alpha is ignored. */
+    int[] color;
+    float[] depth;
+    int[] stamp;
+    int epoch = 1;
+    float minDepth;
+    /** Width and height of a level 0 pyramid cell, in pixels. */
+    static final int HIZ_BLOCK = 8;
+    static final int HIZ_SHIFT = 3;
+    /** hiz[l] is level l of the pyramid, row-major, hizW[l] cells wide. */
+    float[][] hiz;
+    int[] hizW, hizH;
+    FrameBuffer(int width, int height) {
+        this(width, height, -1);
+    }
+    FrameBuffer(int width, int height, float minDepth) {
+        this.width = width;
+        this.height = height;
+        this.minDepth = minDepth;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        color = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        depth = new float[width * height];
+        stamp = new int[width * height];
+        int nLevels = 1;
+        int w = (width + HIZ_BLOCK - 1) >> HIZ_SHIFT;
+        int h = (height + HIZ_BLOCK - 1) >> HIZ_SHIFT;
+        while (w > 1 || h > 1) {
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+            ++nLevels;
+        }
+        hiz = new float[nLevels][];
+        hizW = new int[nLevels];
+        hizH = new int[nLevels];
+        w = (width + HIZ_BLOCK - 1) >> HIZ_SHIFT;
+        h = (height + HIZ_BLOCK - 1) >> HIZ_SHIFT;
+        for (int l=0; l<nLevels; ++l) {
+            hiz[l] = new float[w * h];
+            hizW[l] = w;
+            hizH[l] = h;
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+        }
+        clearHiZ();
+    }
+    BufferedImage getImage() {
+        return image;
+    }
+    /**
+       Find if a given pixel is in front of another, and if so, set its depth.
+
+       @param z pixel depth in NDC
+       @param x pixel x coordinate
+       @param y pixel y coordinate
+       @return true if z is in front of the value at x and y
+    */
+    boolean testAndSet(double z, int x, int y) {
+        return testAndSet(z, y * width + x);
+    }
+    /**
+       Same as testAndSet(z, x, y) where i is y * width + x.
+    */
+    boolean testAndSet(double z, int i) {
+        float fz = (float)z;
+        if (stamp[i] != epoch) {
+            if (minDepth < fz) {
+                depth[i] = fz;
+                stamp[i] = epoch;
+                return true;
+            }
+            return false;
+        }
+        if (depth[i] < fz) {
+            depth[i] = fz;
+            return true;
+        }
+        return false;
+    }
+    /**
+       Get the depth of the pixel at index i.
+    */
+    float depthAt(int i) {
+        return stamp[i] == epoch ? depth[i] : minDepth;
+    }
+    void setRGB(int x, int y, int rgb) {
+        color[y * width + x] = rgb;
+    }
+    /**
+       Copy the other frame buffer's color and depth planes into this one.
+       <p>
+       Both must be the same size.
+       </p>
+    */
+    void copy(FrameBuffer fb) {
+        System.arraycopy(fb.color, 0, color, 0, color.length);
+        System.arraycopy(fb.depth, 0, depth, 0, depth.length);
+        System.arraycopy(fb.stamp, 0, stamp, 0, stamp.length);
+        epoch = fb.epoch;
+        minDepth = fb.minDepth;
+        for (int l=0; l<hiz.length; ++l)
+            System.arraycopy(fb.hiz[l], 0, hiz[l], 0, hiz[l].length);
+    }
+    /**
+       Bring the level 0 pyramid cells inside a pixel rectangle up to date.
+       <p>
+       The rectangle's left and top must be multiples of HIZ_BLOCK, as the
+       Rasterizer's tiles are, so no cell is shared with a rectangle that
+       may be updated at the same time.
+       </p>
+       @param x0, y0 the top left pixel
+       @param x1, y1 the bottom right pixel, inclusive
+    */
+    void updateHiZ(int x0, int y0, int x1, int y1) {
+        float[] cells = hiz[0];
+        int cw = hizW[0];
+        for (int by=y0; by<=y1; by+=HIZ_BLOCK)
+            for (int bx=x0; bx<=x1; bx+=HIZ_BLOCK) {
+                float d = Float.POSITIVE_INFINITY;
+                int ey = Math.min(by + HIZ_BLOCK - 1, y1);
+                int ex = Math.min(bx + HIZ_BLOCK - 1, x1);
+                for (int y=by; y<=ey && d > minDepth; ++y)
+                    for (int i=y * width + bx, e=y * width + ex; i<=e; ++i)
+                        d = Math.min(d, stamp[i] == epoch ? depth[i]
+                                     : minDepth);
+                cells[(by >> HIZ_SHIFT) * cw + (bx >> HIZ_SHIFT)] = d;
+            }
+    }
+    /**
+       Rebuild every level of the pyramid above level 0.
+    */
+    void reduceHiZ() {
+        for (int l=1; l<hiz.length; ++l) {
+            float[] src = hiz[l - 1], dst = hiz[l];
+            int sw = hizW[l - 1], sh = hizH[l - 1];
+            for (int y=0; y<hizH[l]; ++y)
+                for (int x=0; x<hizW[l]; ++x) {
+                    int sx = x * 2, sy = y * 2;
+                    float d = src[sy * sw + sx];
+                    if (sx + 1 < sw)
+                        d = Math.min(d, src[sy * sw + sx + 1]);
+                    if (sy + 1 < sh) {
+                        d = Math.min(d, src[(sy + 1) * sw + sx]);
+                        if (sx + 1 < sw)
+                            d = Math.min(d, src[(sy + 1) * sw + sx + 1]);
+                    }
+                    dst[y * hizW[l] + x] = d;
+                }
+        }
+    }
+    /**
+       Find if everything inside a screen rectangle nearer than z is
+       already hidden.
+       <p>
+       The pyramid level is picked so the rectangle covers at most two
+       cells across and down, so at most four cells are read.
+       </p>
+       @param x0, y0, x1, y1 the rectangle, in pixels, it's clipped to the
+       frame buffer
+       @param z the nearest depth of anything in the rectangle
+       @return true if every pixel in the rectangle is nearer than z
+    */
+    boolean isHidden(double x0, double y0, double x1, double y1, double z) {
+        int px0 = Math.max(0, (int)Math.floor(x0));
+        int py0 = Math.max(0, (int)Math.floor(y0));
+        int px1 = Math.min(width - 1, (int)Math.ceil(x1));
+        int py1 = Math.min(height - 1, (int)Math.ceil(y1));
+        if (px1 < px0 || py1 < py0)
+            return true;
+        int l = 0, s = HIZ_SHIFT;
+        while (l < hiz.length - 1 &&
+               ((px1 >> s) - (px0 >> s) > 1 || (py1 >> s) - (py0 >> s) > 1)) {
+            ++l;
+            ++s;
+        }
+        float[] cells = hiz[l];
+        int cw = hizW[l];
+        for (int y=py0 >> s; y<=py1 >> s; ++y)
+            for (int x=px0 >> s; x<=px1 >> s; ++x)
+                if (!(z < cells[y * cw + x]))
+                    return false;
+        return true;
+    }
+    /**
+       Reset the pyramid to minDepth.
+    */
+    private void clearHiZ() {
+        for (float[] cells : hiz)
+            Arrays.fill(cells, minDepth);
+    }
+    /**
+       Reset every pixel's depth to minDepth.
+    */
+    void clearDepth() {
+        if (++epoch == 0) {
+            // wrapped, the old stamps could collide with new epochs
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+        clearHiZ();
+    }
+    /**
+       Fill the color plane and reset the depth plane.
+    */
+    void clear(Color bg) {
+        Arrays.fill(color, bg.getRGB());
+        clearDepth();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+  OffscreenRenderer.java
+  S. Edward Dolan
+  Thursday, December 28 2023
+*/
+
+package edgrind;
+
+import java.io.File;
+import java.io.IOException;
+//
+import java.awt.image.BufferedImage;
+//
+import javax.imageio.ImageIO;
+//
+import edgrind.geom.*;
+
+/**
+   Render models to an image without a SimView.
+   <p>
+   This runs the same pipeline SimView's render thread does, see
+   SimRenderer.render(), but on the calling thread and into a FrameBuffer of
+   a fixed size. Nothing here touches a display so it works with
+   java.awt.headless=true. An instance isn't thread safe, give each thread
+   its own.
+   </p>
+   <p>
+   The scene is a SceneNode graph. The Model[] variants place each model
+   by its own matrix.
+   </p>
+*/
+class OffscreenRenderer {
+    int width, height;
+    RenderMode mode = RenderMode.SMOOTH;
+    SimRenderer renderer = new SimRenderer(null);
+    FrameBuffer frameBuf;
+    /**
+       Create an offscreen renderer.
+       @param width image width in pixels
+       @param height image height in pixels
+    */
+    OffscreenRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        frameBuf = new FrameBuffer(width, height);
+    }
+    void setRenderMode(RenderMode mode) {
+        this.mode = mode;
+    }
+    /**
+       Render the models.
+       @param models the models, null elements are skipped
+       @param mvm the model view matrix
+       @param pjm the projection matrix
+       @return the rendered image, it's overwritten by the next call
+    */
+    BufferedImage render(Model[] models, Mat4 mvm, Mat4 pjm) {
+        return render(scene(models), mvm, pjm);
+    }
+    /**
+       Render every model of the scene graph.
+       @see #render(Model[], Mat4, Mat4)
+    */
+    BufferedImage render(SceneNode scene, Mat4 mvm, Mat4 pjm) {
+        SimRenderer.Frame f = new SimRenderer.Frame();
+        f.setScene(scene);
+        f.mvm = mvm;
+        f.pjm = pjm;
+        f.nsm = Mat4.ndcToScreen(new Vec4(0, 0, width, height));
+        f.mode = mode;
+        f.width = width;
+        f.height = height;
+        f.pixelSize = 2. / (pjm.a[0] * width);
+        renderer.render(f, frameBuf);
+        return frameBuf.getImage();
+    }
+    /**
+       Render the models and write the image to a PNG file.
+    */
+    void write(Model[] models, Mat4 mvm, Mat4 pjm, File file)
+        throws IOException {
+        write(scene(models), mvm, pjm, file);
+    }
+    void write(SceneNode scene, Mat4 mvm, Mat4 pjm, File file)
+        throws IOException {
+        if (!ImageIO.write(render(scene, mvm, pjm), "png", file))
+            throw new IOException("no PNG writer for " + file);
+    }
+    /**
+       Get an orthographic projection that fits the models in the image.
+       <p>
+       This is what SimView.fitAll() does, with the same padding, but to
+       the models' exact boxes. SimView's boxes are only as tight as the
+       models' bounds, which is quick enough to do on every change. A
+       setup sheet is drawn once, so it's framed as tightly as it can be.
+       </p>
+       @return the projection matrix, or null if the models are empty
+    */
+    Mat4 fit(Model[] models, Mat4 mvm) {
+        return fit(scene(models), mvm);
+    }
+    Mat4 fit(SceneNode scene, Mat4 mvm) {
+        AABBox bbox = scene.getBBox(mvm, true);
+        if (!bbox.isValid())
+            return null;
+        Vec2 p1 = bbox.leftTop(), p2 = bbox.rightBottom();
+        double w = Math.abs(p2.x - p1.x), h = Math.abs(p2.y - p1.y);
+        if (w == 0 || h == 0)
+            return null;
+        double aspect = (double)width / height;
+        double wrdH = (w / h >= aspect ? w / aspect : h) * 1.02;
+        double wrdW = wrdH * aspect;
+        double cx = (p1.x + p2.x) * .5, cy = (p1.y + p2.y) * .5;
+        return Mat4.ortho(cx - wrdW * .5, cx + wrdW * .5,
+                          cy - wrdH * .5, cy + wrdH * .5,
+                          1000, -1000);
+    }
+    /**
+       Make a scene graph with a node for each model.
+    */
+    static SceneNode scene(Model[] models) {
+        SceneNode root = new SceneNode("Scene");
+        for (Model m : models)
+            if (m != null)
+                root.add(new SceneNode("Model", m));
+        return root;
+    }
+}
@@ -0,0 +1,758 @@
+/*
+  Rasterizer.java
+  S. Edward Dolan
+  Monday, December 18 2023
+*/
+
+package edgrind;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+//
+import java.awt.Color;
+//
+import java.lang.management.ManagementFactory;
+//
+import edgrind.geom.*;
+
+/**
+   A tile binning, fork-join triangle rasterizer for SimView.
+   <p>
+   Triangles are set up on the calling thread (transformed, culled, and
+   projected to screen coordinates) then binned into TILE_SIZE square screen
+   tiles. Each tile is shaded by its own task in a fork-join pool. A tile owns
+   every pixel inside it, so no two tasks ever touch the same pixel of the
+   frame buffer. Each tile draws its triangles in submission order,
+   which makes the image identical to drawing them one after another on a
+   single thread.
+   </p>
+   <p>
+   Two scan conversion methods are available. The default steps fixed-point
+   edge functions along each scanline and interpolates depth and normals with
+   plane equation deltas, so there's no allocation and no division per pixel.
+   The barycentric method is the original one, it finds the depth of each
+   pixel with a ray/plane intersection. See Config.getSimRaster().
+   </p>
+   <p>
+   Either way a pixel's color is read from its model's ShadeTable.
+   </p>
+   <p>
+   With occlusion culling on, each tile brings the frame buffer's depth
+   pyramid up to date once it's shaded, see FrameBuffer.isHidden(). A mesh
+   or cluster hidden behind what an earlier flush() drew is skipped, so
+   the owner should add models front to back, see nearestDepth(), and
+   flush after each one.
+   </p>
+   <p>
+   The Tris are pooled and their vectors set in place, so a frame of the
+   same scene allocates next to nothing however many triangles it draws,
+   see main().
+   </p>
+*/
+class Rasterizer {
+    /** Width and height of a screen tile, in pixels. */
+    static final int TILE_SIZE = 64;
+    /** Fractional bits of the fixed-point screen coordinates. */
+    static final int SUB_BITS = 4;
+    static final int SUB = 1 << SUB_BITS;
+    /** Constant part of the depth only polygon offset, in NDC. */
+    static final double DEPTH_OFFSET = 1e-5;
+    /** Shared by all rasterizers, created on first use. */
+    private static ForkJoinPool pool;
+    //
+    FrameBuffer fb;
+    int width, height;
+    int nTilesX, nTilesY;
+    /** The triangles submitted since begin(), in submission order. */
+    List<Tri> tris = new ArrayList<Tri>();
+    /**
+       Every Tri made so far, reused from flush to flush. tris holds the
+       first tris.size() of them.
+    */
+    private final List<Tri> triPool = new ArrayList<Tri>();
+    /** Per tile lists of indices into tris. */
+    int[][] bins;
+    int[] binSizes;
+    /** Scan triangles with edge functions, else barycentric coords. */
+    boolean edgeFunctions = !Config.getSimRaster().equals("barycentric");
+    /** Skip meshes and clusters behind what's already been flushed. */
+    boolean occlusion = Config.getOcclusionCulling();
+    VertexStage vertexStage = new VertexStage();
+    /** Unit light direction in modelview coordinates, set by begin(). */
+    double lx, ly, lz = 1;
+    /** Per model shading, entries go away with their model. */
+    Map<Model, ShadeTable> shadeTables = new WeakHashMap<Model, ShadeTable>();
+    /** Plane equation scratch for setupEdges(). */
+    private final double[] plane = new double[3];
+    /** Edge vector scratch for setupBarycentric(). */
+    private final Vec3 edge1 = new Vec3(), edge2 = new Vec3();
+    /** Scratch for the composed matrices handed to the vertex stage. */
+    private final Mat4 mmv = new Mat4(), psm = new Mat4();
+    /**
+       addModel() scratch, a model's meshes that may be seen and their
+       nearest depths, nearest first. Grown on demand.
+    */
+    private IndexedMesh[] visible = new IndexedMesh[8];
+    private double[] nearest = new double[8];
+    /** Set by cancel(), the owner must clear it before the next frame. */
+    volatile boolean cancelled;
+    /**
+       A triangle set up for rasterization.
+    */
+    static class Tri {
+        /*
+          Barycentric scan only: the screen coords, the screen space normal
+          used to find the pixel depth, and the modelview vertex normals used
+          for per-pixel lighting.
+        */
+        Vec3 v1, v2, v3;
+        Vec3 triN;
+        Vec3 n1, n2, n3;
+        double triArea;
+        // the triangle's bounding box clipped to the window
+        int x0, y0, x1, y1;
+        boolean smooth;
+        // only write the depth buffer
+        boolean depthOnly;
+        // flat shaded color
+        int color;
+        // smooth shaded colors
+        ShadeTable shades;
+        /*
+          Edge functions, E(x, y) = ec + ea * x + eb * y, in fixed-point.
+          A pixel is inside when all three are >= 0.
+        */
+        long ea1, eb1, ec1, ea2, eb2, ec2, ea3, eb3, ec3;
+        /*
+          Plane equations, a(x, y) = c + dx * x + dy * y, for the depth and
+          the normal components.
+        */
+        double zc, zdx, zdy;
+        double nxc, nxdx, nxdy, nyc, nydx, nydy, nzc, nzdx, nzdy;
+    }
+    /**
+       Get the pool used to shade the tiles.
+       <p>
+       The pool's parallelism is read from the "render-threads" config
+       parameter the first time it's needed.
+       </p>
+    */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(Config.getRenderThreads());
+        return pool;
+    }
+    /**
+       Start a new frame.
+       <p>
+       The buffers are not cleared.
+       </p>
+    */
+    void begin(FrameBuffer fb) {
+        this.fb = fb;
+        width = fb.width;
+        height = fb.height;
+        vertexStage.setViewport(width, height);
+        nTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        nTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int n = nTilesX * nTilesY;
+        if (bins == null || bins.length != n) {
+            bins = new int[n][16];
+            binSizes = new int[n];
+        }
+        else
+            Arrays.fill(binSizes, 0);
+        tris.clear();
+        double[] light = Config.getLightDirection();
+        lx = light[0];
+        ly = light[1];
+        lz = light[2];
+    }
+    /**
+       Get the chord error tolerance to pick a mesh's level of detail with.
+       <p>
+       This is Config.getLodTolerance() pixels in world units. A model's
+       matrix is assumed not to scale.
+       </p>
+       @return the tolerance, 0 if level of detail is turned off
+    */
+    static double chordTolerance(Mat4 pjm, Mat4 nsm) {
+        return Config.getLodTolerance() / Math.abs(pjm.a[0] * nsm.a[0]);
+    }
+    /**
+       Get the depth of the nearest corner of the model's box, to order the
+       models front to back with.
+       @return the screen depth, larger is nearer
+    */
+    double nearestDepth(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm) {
+        vertexStage.setMatrices(mm.mulInto(mvm, mmv), pjm.mulInto(nsm, psm));
+        if (!model.getBounds().isValid())
+            return Double.NEGATIVE_INFINITY;
+        vertexStage.classify(model.getBounds());
+        return vertexStage.extent[5];
+    }
+    /**
+       Get the model's shade table, rebuilt if its color or the light has
+       changed.
+    */
+    private ShadeTable getShadeTable(Model model) {
+        ShadeTable st = shadeTables.get(model);
+        if (st == null)
+            shadeTables.put(model, st = new ShadeTable());
+        st.update(model.getColor(), lx, ly, lz);
+        return st;
+    }
+    /**
+       Set up the model's front facing triangles and bin them.
+       <p>
+       Each unique vertex is transformed once by the VertexStage, the
+       triangles are then assembled from the mesh's index lists.
+       </p>
+       <p>
+       Nothing is done for a model or mesh whose box is off the screen. The
+       triangles are visited a cluster at a time, see IndexedMesh, skipping
+       clusters that are off the screen or that face away from the viewer.
+       </p>
+       <p>
+       The meshes are set up nearest first so fewer hidden pixels are
+       shaded. A mesh or cluster is skipped if the depth pyramid shows it
+       behind what's already been flushed.
+       </p>
+
+       @param model the model to draw
+       @param mm the matrix that places this instance of the model, see
+       SceneNode.getInstanceMatrix()
+       @param mvm the model view matrix
+       @param pjm the projection matrix
+       @param nsm the NDC to screen matrix
+       @param smooth if true, shade per-pixel, else per-triangle
+    */
+    void addModel(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm,
+                  boolean smooth) {
+        addModel(model, mm, mvm, pjm, nsm, smooth, false);
+    }
+    /**
+       Set up the model's front facing triangles to only write depth.
+       <p>
+       The triangles are pushed back by their depth slope (a polygon offset)
+       so lines drawn on their surface afterwards pass the depth test. This
+       is the first pass of the hidden line render mode.
+       </p>
+    */
+    void addModelDepth(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm) {
+        addModel(model, mm, mvm, pjm, nsm, false, true);
+    }
+    private void addModel(Model model, Mat4 mm, Mat4 mvm, Mat4 pjm, Mat4 nsm,
+                          boolean smooth, boolean depthOnly) {
+        vertexStage.setMatrices(mm.mulInto(mvm, mmv), pjm.mulInto(nsm, psm));
+        if (vertexStage.classify(model.getBounds()) == VertexStage.OUTSIDE)
+            return;
+        ShadeTable shades = depthOnly ? null : getShadeTable(model);
+        double tol = chordTolerance(pjm, nsm);
+        double[] e = vertexStage.extent;
+        // the meshes that may be seen, nearest first
+        int nVisible = 0;
+        for (Mesh mesh : model) {
+            IndexedMesh im = (tol > 0 ? mesh.lod(tol) : mesh).getIndexed();
+            if (vertexStage.classify(im.bounds, 0) == VertexStage.OUTSIDE ||
+                occlusion && fb.isHidden(e[0], e[1], e[3], e[4], e[5]))
+                continue;
+            if (nVisible == visible.length) {
+                visible = Arrays.copyOf(visible, nVisible * 2);
+                nearest = Arrays.copyOf(nearest, nVisible * 2);
+            }
+            // insertion sort, a model has few meshes
+            int i = nVisible++;
+            for (; i > 0 && nearest[i - 1] < e[5]; --i) {
+                visible[i] = visible[i - 1];
+                nearest[i] = nearest[i - 1];
+            }
+            visible[i] = im;
+            nearest[i] = e[5];
+        }
+        for (int v=0; v<nVisible; ++v) {
+            IndexedMesh im = visible[v];
+            // don't keep the mesh alive after the frame
+            visible[v] = null;
+            int screen = vertexStage.classify(im.bounds, 0);
+            vertexStage.transform(im, smooth);
+            double[] vv = vertexStage.view;
+            double[] sv = vertexStage.screen;
+            double[] nv = vertexStage.norms;
+            int[] vidxs = im.vidxs, nidxs = im.nidxs;
+            for (int c=0; c<im.nClusters(); ++c) {
+                if (vertexStage.isBackFacing(im.cones, c * 4))
+                    continue;
+                if ((screen == VertexStage.PARTIAL || occlusion) &&
+                    (vertexStage.classify(im.clusterBounds, c * 6)
+                     == VertexStage.OUTSIDE ||
+                     occlusion &&
+                     fb.isHidden(e[0], e[1], e[3], e[4], e[5])))
+                    continue;
+                int k0 = c * IndexedMesh.CLUSTER_SIZE * 3;
+                int k1 = Math.min(vidxs.length,
+                                  k0 + IndexedMesh.CLUSTER_SIZE * 3);
+                for (int k=k0; k<k1; k+=3) {
+                    int i1 = vidxs[k] * 3;
+                    int i2 = vidxs[k + 1] * 3;
+                    int i3 = vidxs[k + 2] * 3;
+                    // cull back faces using the modelview face normal
+                    double ax = vv[i2] - vv[i1];
+                    double ay = vv[i2 + 1] - vv[i1 + 1];
+                    double az = vv[i2 + 2] - vv[i1 + 2];
+                    double bx = vv[i3] - vv[i1];
+                    double by = vv[i3 + 1] - vv[i1 + 1];
+                    double bz = vv[i3 + 2] - vv[i1 + 2];
+                    double cx = ay * bz - az * by;
+                    double cy = az * bx - ax * bz;
+                    double cz = ax * by - ay * bx;
+                    if (cz < 0)
+                        continue;
+                    // triangle 2d bounding box clipped to the window
+                    double sx1 = sv[i1], sy1 = sv[i1 + 1];
+                    double sx2 = sv[i2], sy2 = sv[i2 + 1];
+                    double sx3 = sv[i3], sy3 = sv[i3 + 1];
+                    Tri r = nextTri();
+                    r.x0 = (int)Math.max(0,
+                                         Math.min(sx1, Math.min(sx2, sx3)));
+                    r.y0 = (int)Math.max(0,
+                                         Math.min(sy1, Math.min(sy2, sy3)));
+                    r.x1 = (int)Math.min(width - 1,
+                                         Math.max(sx1, Math.max(sx2, sx3)));
+                    r.y1 = (int)Math.min(height - 1,
+                                         Math.max(sy1, Math.max(sy2, sy3)));
+                    if (r.x1 < r.x0 || r.y1 < r.y0)
+                        continue;
+                    r.smooth = smooth;
+                    r.depthOnly = depthOnly;
+                    if (smooth)
+                        r.shades = shades;
+                    else if (!depthOnly) {
+                        // same color for every pixel in this triangle
+                        double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
+                        if (len == 0)
+                            continue;
+                        r.color = shades.shade((cx * lx + cy * ly + cz * lz)
+                                               / len);
+                    }
+                    int j1 = nidxs[k] * 3;
+                    int j2 = nidxs[k + 1] * 3;
+                    int j3 = nidxs[k + 2] * 3;
+                    if (edgeFunctions || depthOnly) {
+                        if (!setupEdges(r, sv, i1, i2, i3, nv, j1, j2, j3))
+                            continue;
+                    }
+                    else if (!setupBarycentric(r, sv, i1, i2, i3,
+                                               nv, j1, j2, j3))
+                        continue;
+                    bin(r);
+                }
+            }
+        }
+    }
+    /**
+       Get a Tri to set up, the next unused one in the pool.
+    */
+    private Tri nextTri() {
+        int i = tris.size();
+        if (i == triPool.size())
+            triPool.add(new Tri());
+        return triPool.get(i);
+    }
+    /**
+       Set a pooled Tri's vector to the coordinates at a[i].
+       @param v the vector, null if the Tri hasn't one yet
+       @return v, or a new vector if it was null
+    */
+    private static Vec3 set(Vec3 v, double[] a, int i) {
+        if (v == null)
+            return new Vec3(a[i], a[i + 1], a[i + 2]);
+        v.set(a[i], a[i + 1], a[i + 2]);
+        return v;
+    }
+    /**
+       Set up the triangle for the barycentric scan.
+       @return false if the triangle has no area
+    */
+    private boolean setupBarycentric(Tri t, double[] sv, int i1, int i2,
+                                     int i3, double[] nv, int j1, int j2,
+                                     int j3) {
+        Vec3 v1 = t.v1 = set(t.v1, sv, i1);
+        Vec3 v2 = t.v2 = set(t.v2, sv, i2);
+        Vec3 v3 = t.v3 = set(t.v3, sv, i3);
+        t.triArea = Algo.triArea2d(v1, v2, v3);
+        if (t.triArea == 0)
+            return false;
+        // this normal is used to find the pixel depth
+        if (t.triN == null)
+            t.triN = new Vec3();
+        Vec3.crossInto(Vec3.subInto(v2, v1, edge1),
+                       Vec3.subInto(v3, v1, edge2), t.triN).norm();
+        if (t.smooth) {
+            t.n1 = set(t.n1, nv, j1);
+            t.n2 = set(t.n2, nv, j2);
+            t.n3 = set(t.n3, nv, j3);
+        }
+        return true;
+    }
+    /**
+       Set up the triangle's edge functions and plane equations.
+       <p>
+       The vertices are snapped to a 1/SUB pixel grid. Pixels are sampled at
+       integer coordinates, same as the barycentric method. Pixels exactly on
+       an edge are only drawn if the edge is a top or left edge, so a pixel
+       on an edge shared by two triangles is drawn once.
+       </p>
+       @param sv the screen coordinates
+       @param i1 the index of vertex 1's x coordinate in sv, etc.
+       @param nv the modelview normals
+       @param j1 the index of normal 1's x component in nv, etc.
+       @return false if the triangle has no area
+    */
+    private boolean setupEdges(Tri t, double[] sv, int i1, int i2, int i3,
+                               double[] nv, int j1, int j2, int j3) {
+        long x1 = Math.round(sv[i1] * SUB), y1 = Math.round(sv[i1 + 1] * SUB);
+        long x2 = Math.round(sv[i2] * SUB), y2 = Math.round(sv[i2 + 1] * SUB);
+        long x3 = Math.round(sv[i3] * SUB), y3 = Math.round(sv[i3 + 1] * SUB);
+        long area = (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+        if (area == 0)
+            return false;
+        if (area < 0) {
+            // make the winding positive by swapping vertices 2 and 3
+            long tmp = x2; x2 = x3; x3 = tmp;
+            tmp = y2; y2 = y3; y3 = tmp;
+            int itmp = i2; i2 = i3; i3 = itmp;
+            itmp = j2; j2 = j3; j3 = itmp;
+        }
+        // edge 1 -> 2
+        t.ea1 = -(y2 - y1) * SUB;
+        t.eb1 = (x2 - x1) * SUB;
+        t.ec1 = (y2 - y1) * x1 - (x2 - x1) * y1 + edgeBias(x2 - x1, y2 - y1);
+        // edge 2 -> 3
+        t.ea2 = -(y3 - y2) * SUB;
+        t.eb2 = (x3 - x2) * SUB;
+        t.ec2 = (y3 - y2) * x2 - (x3 - x2) * y2 + edgeBias(x3 - x2, y3 - y2);
+        // edge 3 -> 1
+        t.ea3 = -(y1 - y3) * SUB;
+        t.eb3 = (x1 - x3) * SUB;
+        t.ec3 = (y1 - y3) * x3 - (x1 - x3) * y3 + edgeBias(x1 - x3, y1 - y3);
+        // plane equation gradients, in pixels
+        double fx1 = (double)x1 / SUB, fy1 = (double)y1 / SUB;
+        double dx2 = (double)(x2 - x1) / SUB, dy2 = (double)(y2 - y1) / SUB;
+        double dx3 = (double)(x3 - x1) / SUB, dy3 = (double)(y3 - y1) / SUB;
+        double rdet = 1. / (dx2 * dy3 - dx3 * dy2);
+        double[] p = plane;
+        planeEq(sv[i1 + 2], sv[i2 + 2], sv[i3 + 2],
+                fx1, fy1, dx2, dy2, dx3, dy3, rdet, p);
+        t.zc = p[0]; t.zdx = p[1]; t.zdy = p[2];
+        if (t.depthOnly)
+            t.zc -= Math.abs(t.zdx) + Math.abs(t.zdy) + DEPTH_OFFSET;
+        if (t.smooth) {
+            planeEq(nv[j1], nv[j2], nv[j3],
+                    fx1, fy1, dx2, dy2, dx3, dy3, rdet, p);
+            t.nxc = p[0]; t.nxdx = p[1]; t.nxdy = p[2];
+            planeEq(nv[j1 + 1], nv[j2 + 1], nv[j3 + 1],
+                    fx1, fy1, dx2, dy2, dx3, dy3, rdet, p);
+            t.nyc = p[0]; t.nydx = p[1]; t.nydy = p[2];
+            planeEq(nv[j1 + 2], nv[j2 + 2], nv[j3 + 2],
+                    fx1, fy1, dx2, dy2, dx3, dy3, rdet, p);
+            t.nzc = p[0]; t.nzdx = p[1]; t.nzdy = p[2];
+        }
+        return true;
+    }
+    /**
+       Get the fill rule bias of an edge with the given direction.
+       @return 0 for a top or left edge, else -1
+    */
+    private static long edgeBias(long dx, long dy) {
+        return (dy < 0 || (dy == 0 && dx > 0)) ? 0 : -1;
+    }
+    /**
+       Find the plane equation of a vertex attribute.
+       @param a1 the attribute at vertex 1
+       @param a2 the attribute at vertex 2
+       @param a3 the attribute at vertex 3
+       @param x1 vertex 1 x coord
+       @param y1 vertex 1 y coord
+       @param dx2 vertex 2 x coord relative to vertex 1, etc.
+       @param rdet the reciprocal of the triangle's determinant
+       @param out receives the value at pixel 0,0 and the x and y gradients
+    */
+    private static void planeEq(double a1, double a2, double a3,
+                                double x1, double y1,
+                                double dx2, double dy2,
+                                double dx3, double dy3,
+                                double rdet, double[] out) {
+        double da2 = a2 - a1, da3 = a3 - a1;
+        double dx = (da2 * dy3 - da3 * dy2) * rdet;
+        double dy = (da3 * dx2 - da2 * dx3) * rdet;
+        out[0] = a1 - dx * x1 - dy * y1;
+        out[1] = dx;
+        out[2] = dy;
+    }
+    /**
+       Add the triangle to every tile its bounding box overlaps.
+    */
+    private void bin(Tri t) {
+        int idx = tris.size();
+        tris.add(t);
+        int tx0 = t.x0 / TILE_SIZE, tx1 = t.x1 / TILE_SIZE;
+        int ty0 = t.y0 / TILE_SIZE, ty1 = t.y1 / TILE_SIZE;
+        for (int ty=ty0; ty<=ty1; ++ty)
+            for (int tx=tx0; tx<=tx1; ++tx) {
+                int b = ty * nTilesX + tx;
+                int n = binSizes[b];
+                if (n == bins[b].length)
+                    bins[b] = Arrays.copyOf(bins[b], n * 2);
+                bins[b][n] = idx;
+                binSizes[b] = n + 1;
+            }
+    }
+    /**
+       Stop shading the current frame as soon as possible.
+       <p>
+       May be called from any thread. flush() still blocks until every tile
+       task has returned, but each returns at its next triangle.
+       </p>
+    */
+    void cancel() {
+        cancelled = true;
+    }
+    /**
+       Shade every binned triangle, blocking until all tiles are done.
+       <p>
+       The bins are emptied, more triangles may be added and flushed before
+       the next begin().
+       </p>
+    */
+    void flush() {
+        if (tris.isEmpty() || cancelled) {
+            tris.clear();
+            Arrays.fill(binSizes, 0);
+            return;
+        }
+        List<TileTask> tasks = new ArrayList<TileTask>();
+        for (int b=0; b<bins.length; ++b)
+            if (binSizes[b] > 0)
+                tasks.add(new TileTask(b));
+        ForkJoinPool p = getPool();
+        if (p.getParallelism() == 1)
+            for (TileTask task : tasks)
+                task.compute();
+        else
+            p.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+        tris.clear();
+        Arrays.fill(binSizes, 0);
+        if (occlusion)
+            fb.reduceHiZ();
+    }
+    /**
+       Shade the triangles of a single tile.
+    */
+    @SuppressWarnings("serial")
+    private class TileTask extends RecursiveAction {
+        final int bin;
+        // per task scratch, nothing here is shared between tiles
+        final Vec3 rayP = new Vec3();
+        final Vec3 rayN = new Vec3(0, 0, -1);
+        final Vec3 pn = new Vec3();
+        final Vec3 out = new Vec3();
+        final Vec3 hitNormal = new Vec3();
+        TileTask(int bin) {
+            this.bin = bin;
+        }
+        @Override
+        protected void compute() {
+            int tx0 = (bin % nTilesX) * TILE_SIZE;
+            int ty0 = (bin / nTilesX) * TILE_SIZE;
+            int tx1 = Math.min(width, tx0 + TILE_SIZE) - 1;
+            int ty1 = Math.min(height, ty0 + TILE_SIZE) - 1;
+            int[] idxs = bins[bin];
+            for (int i=0, n=binSizes[bin]; i<n && !cancelled; ++i)
+                if (edgeFunctions || tris.get(idxs[i]).depthOnly)
+                    scan(tris.get(idxs[i]), tx0, ty0, tx1, ty1);
+                else
+                    shade(tris.get(idxs[i]), tx0, ty0, tx1, ty1);
+            if (occlusion)
+                fb.updateHiZ(tx0, ty0, tx1, ty1);
+        }
+        /**
+           Scan the part of the triangle inside the given tile rectangle by
+           stepping its edge functions.
+        */
+        private void scan(Tri t, int tx0, int ty0, int tx1, int ty1) {
+            int x0 = Math.max(t.x0, tx0), x1 = Math.min(t.x1, tx1);
+            int y0 = Math.max(t.y0, ty0), y1 = Math.min(t.y1, ty1);
+            long ea1 = t.ea1, ea2 = t.ea2, ea3 = t.ea3;
+            double zdx = t.zdx;
+            double nxdx = t.nxdx, nydx = t.nydx, nzdx = t.nzdx;
+            boolean smooth = t.smooth, depthOnly = t.depthOnly;
+            ShadeTable shades = t.shades;
+            double lx = Rasterizer.this.lx, ly = Rasterizer.this.ly;
+            double lz = Rasterizer.this.lz;
+            int[] color = fb.color;
+            for (int y=y0; y<=y1; ++y) {
+                int i = y * width + x0;
+                long e1 = t.ec1 + ea1 * x0 + t.eb1 * y;
+                long e2 = t.ec2 + ea2 * x0 + t.eb2 * y;
+                long e3 = t.ec3 + ea3 * x0 + t.eb3 * y;
+                double z = t.zc + zdx * x0 + t.zdy * y;
+                double nx = 0, ny = 0, nz = 0;
+                if (smooth) {
+                    nx = t.nxc + nxdx * x0 + t.nxdy * y;
+                    ny = t.nyc + nydx * x0 + t.nydy * y;
+                    nz = t.nzc + nzdx * x0 + t.nzdy * y;
+                }
+                boolean dotting = false;
+                for (int x=x0; x<=x1; ++x, ++i) {
+                    if ((e1 | e2 | e3) >= 0) {
+                        if (fb.testAndSet(z, i) && !depthOnly) {
+                            if (smooth)
+                                color[i] = shades.shade(
+                                    (nx * lx + ny * ly + nz * lz)
+                                    / Math.sqrt(nx * nx + ny * ny + nz * nz));
+                            else
+                                color[i] = t.color;
+                        }
+                        dotting = true;
+                    }
+                    else if (dotting)
+                        // exited right side of the triangle
+                        break;
+                    e1 += ea1;
+                    e2 += ea2;
+                    e3 += ea3;
+                    z += zdx;
+                    nx += nxdx;
+                    ny += nydx;
+                    nz += nzdx;
+                }
+            }
+        }
+        /**
+           Shade the part of the triangle inside the given tile rectangle.
+        */
+        private void shade(Tri t, int tx0, int ty0, int tx1, int ty1) {
+            Vec3 v1 = t.v1, v2 = t.v2, v3 = t.v3;
+            double triArea = t.triArea;
+            pn.set(t.triN);
+            int x0 = Math.max(t.x0, tx0), x1 = Math.min(t.x1, tx1);
+            int y0 = Math.max(t.y0, ty0), y1 = Math.min(t.y1, ty1);
+            /*
+              For each pixel in the clipped bounding box, left to right, top
+              to bottom.
+            */
+            for (int y=y0; y<=y1; ++y) {
+                boolean dotting = false;
+                for (int x=x0; x<=x1; ++x) {
+                    double b1 = (((y - v3.y) * (v2.x - v3.x) +
+                                  (v2.y - v3.y) * (v3.x - x))
+                                 / triArea);
+                    double b2 = (((y - v1.y) * (v3.x - v1.x) +
+                                  (v3.y - v1.y) * (v1.x - x))
+                                 / triArea);
+                    double b3 = (((y - v2.y) * (v1.x - v2.x) +
+                                  (v1.y - v2.y) * (v2.x - x))
+                                 / triArea);
+                    if (b1 >= 0 && b1 <= 1 &&
+                        b2 >= 0 && b2 <= 1 &&
+                        b3 >= 0 && b3 <= 1) {
+                        // pixel is in the triangle.
+                        rayP.set(x, y, 1); // at near plane
+                        Algo.xsectRayPlane(v1, pn, rayP, rayN, out);
+                        if (fb.testAndSet(out.z, x, y)) {
+                            if (t.smooth) {
+                                /*
+                                  now use the vertice normals to calculate
+                                  the per/pixel lighting
+                                */
+                                hitNormal.set(t.n1.x * b1 + t.n2.x * b2
+                                              + t.n3.x * b3,
+                                              t.n1.y * b1 + t.n2.y * b2
+                                              + t.n3.y * b3,
+                                              t.n1.z * b1 + t.n2.z * b2
+                                              + t.n3.z * b3);
+                                hitNormal.norm();
+                                fb.setRGB(x, y,
+                                          t.shades.shade(hitNormal.x * lx +
+                                                         hitNormal.y * ly +
+                                                         hitNormal.z * lz));
+                            }
+                            else
+                                fb.setRGB(x, y, t.color);
+                        }
+                        dotting = true;
+                    }
+                    else if (dotting)
+                        // exited right side of the triangle
+                        break;
+                }
+            }
+        }
+    }
+    /*
+      Timer... renders a revolved mesh of about 128k triangles with each
+      scan method and shading, printing the bytes allocated per frame by
+      every thread and the time per frame.
+    */
+    public static void main(String[] args) {
+        List<Vec2> pts = new ArrayList<Vec2>();
+        for (int i=0; i<=2000; ++i)
+            pts.add(new Vec2(i * .005, 1 + .2 * Math.sin(i * .05)));
+        Model model = new Model();
+        model.add(Mesh.revolvePolyline(pts));
+        Mat4 mvm = Mat4.rotY(Math.toRadians(-45))
+            .mul(Mat4.rotX(Math.atan2(1., Math.sqrt(2))));
+        AABBox b = model.getBBox(mvm);
+        int w = 800, h = 600;
+        Mat4 pjm = Mat4.ortho(b.minX(), b.maxX(), b.minY(), b.maxY(), 1000,
+                              -1000);
+        Mat4 nsm = Mat4.ndcToScreen(new Vec4(0, 0, w, h));
+        FrameBuffer fb = new FrameBuffer(w, h);
+        Rasterizer r = new Rasterizer();
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)ManagementFactory
+            .getThreadMXBean();
+        int frames = 30;
+        for (int i=0; i<4; ++i) {
+            r.edgeFunctions = i < 2;
+            boolean smooth = i % 2 == 1;
+            // the first pass warms up the pool and the pooled Tris
+            for (int pass=0; pass<2; ++pass) {
+                long b0 = 0, b1 = 0;
+                for (long n : mx.getThreadAllocatedBytes(mx
+                                                         .getAllThreadIds()))
+                    b0 += Math.max(n, 0);
+                long t0 = System.nanoTime();
+                for (int f=0; f<frames; ++f) {
+                    fb.clear(Color.black);
+                    r.begin(fb);
+                    r.addModel(model, new Mat4(), mvm, pjm, nsm, smooth);
+                    r.flush();
+                }
+                long ns = System.nanoTime() - t0;
+                for (long n : mx.getThreadAllocatedBytes(mx
+                                                         .getAllThreadIds()))
+                    b1 += Math.max(n, 0);
+                if (pass == 1)
+                    System.out.printf("%-11s %-6s %10d bytes/frame" +
+                                      " %8.2f ms/frame%n",
+                                      r.edgeFunctions ? "edge" : "barycentric",
+                                      smooth ? "smooth" : "flat",
+                                      (b1 - b0) / frames,
+                                      ns / 1e6 / frames);
+            }
+        }
+        getPool().shutdown();
+    }
+}
@@ -0,0 +1,17 @@
+/*
+  RenderMode.java
+  S. Edward Dolan
+  Wednesday, December 27 2023
+*/
+
+package edgrind;
+
+/**
+   How SimView draws its models, cheapest first.
+*/
+enum RenderMode {
+    WIRE,
+    HIDDEN_LINE,
+    FLAT,
+    SMOOTH
+};
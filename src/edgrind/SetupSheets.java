@@ -0,0 +1,147 @@
+/*
+  SetupSheets.java
+  S. Edward Dolan
+  Thursday, December 28 2023
+*/
+
+package edgrind;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+//
+import java.io.File;
+import java.io.IOException;
+//
+import edgrind.geom.*;
+//
+import edgrind.sketch.Sketch;
+import edgrind.sketch.SketchScene;
+import edgrind.sketch.SK50Sketch;
+import edgrind.sketch.HPS20Sketch;
+import edgrind.sketch.WheelAdapterSketch;
+
+/**
+   Render an isometric PNG of every chuck and wheel pack combination.
+   <p>
+   This is EdGrind's --render command line mode. The models are built up
+   front, one per chuck and one per wheel pack adapter. Each scene is a
+   SimScene, placed the way SimView places them, whose nodes share those
+   models. The scenes are then rendered in parallel, each worker with its
+   own OffscreenRenderer, Config.getRenderThreads() at a time.
+   </p>
+   <p>
+   Only parts that have a 3D model are drawn. Collets and wheels don't have
+   one in SimView yet.
+   </p>
+*/
+class SetupSheets {
+    File dir;
+    int width = 1024, height = 768;
+    RenderMode mode = RenderMode.SMOOTH;
+    SetupSheets(File dir) {
+        this.dir = dir;
+    }
+    /**
+       Render every scene.
+       @return the number of images written
+    */
+    int renderAll() throws Exception {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("can't create " + dir);
+        SketchScene scene = new SketchScene();
+        String[] chuckNames = Chuck.allChuckNames();
+        Model[] chucks = new Model[chuckNames.length];
+        for (int i=0; i<chuckNames.length; ++i)
+            chucks[i] = chuckModel(Chuck.getChuck(chuckNames[i]), scene);
+        String[] packNames = WheelPack.allWheelPackNames();
+        Model[] adapters = new Model[packNames.length];
+        int[] spindles = new int[packNames.length];
+        for (int i=0; i<packNames.length; ++i) {
+            WheelPack pack = WheelPack.getWheelPack(packNames[i]);
+            adapters[i] = adapterModel(pack, scene);
+            spindles[i] = pack.getSpindle();
+        }
+        final Mat4 mvm = Mat4.rotY(Math.toRadians(-45))
+            .mul(Mat4.rotX(SimView.isoAngle));
+        List<Callable<File>> jobs = new ArrayList<Callable<File>>();
+        for (int i=0; i<chucks.length; ++i)
+            for (int j=0; j<adapters.length; ++j) {
+                SimScene sim = new SimScene();
+                int sp = spindles[j] == 1 ? 0 : 1;
+                sim.adapters[sp].setModel(adapters[j]);
+                sim.chuck.setModel(chucks[i]);
+                final SceneNode root = sim.root;
+                final File file = new File(dir, fileName(chuckNames[i],
+                                                         packNames[j]));
+                jobs.add(new Callable<File>() {
+                        @Override
+                        public File call() throws Exception {
+                            OffscreenRenderer r
+                                = new OffscreenRenderer(width, height);
+                            r.setRenderMode(mode);
+                            Mat4 pjm = r.fit(root, mvm);
+                            if (pjm == null)
+                                return null;
+                            r.write(root, mvm, pjm, file);
+                            return file;
+                        }
+                    });
+            }
+        ExecutorService exec
+            = Executors.newFixedThreadPool(Config.getRenderThreads());
+        int n = 0;
+        try {
+            for (Future<File> f : exec.invokeAll(jobs)) {
+                try {
+                    File file = f.get();
+                    if (file != null) {
+                        System.out.println(file);
+                        ++n;
+                    }
+                }
+                catch (ExecutionException e) {
+                    System.err.println("BOOM: SetupSheets.renderAll: " +
+                                       e.getCause());
+                }
+            }
+        }
+        finally {
+            exec.shutdown();
+        }
+        return n;
+    }
+    /**
+       Build the chuck's model as ChuckPanel does, null if it has none.
+    */
+    static Model chuckModel(Chuck chuck, SketchScene scene) {
+        Sketch s = null;
+        switch (chuck.getType()) {
+            case SK: s = new SK50Sketch(chuck.getSpecs(), scene); break;
+            case HP: s = new HPS20Sketch(chuck.getSpecs(), scene); break;
+        }
+        return s == null ? null : s.getModel();
+    }
+    /**
+       Build the wheel pack's adapter model as SpindlePanel does, null if it
+       has no adapter. SimScene's spindle node places it.
+    */
+    static Model adapterModel(WheelPack pack, SketchScene scene) {
+        WheelAdapter adapter = WheelAdapter.getAdapter(pack.getAdapterName());
+        if (adapter == null)
+            return null;
+        return new WheelAdapterSketch(adapter.getSpecs(), scene,
+                                      pack.getSpindle() == 2).getModel();
+    }
+    /**
+       Make a PNG file name from the db names.
+    */
+    static String fileName(String chuckName, String packName) {
+        return (chuckName + "_" + packName).replaceAll("[^A-Za-z0-9._-]", "_")
+            + ".png";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+  ShadeTable.java
+  S. Edward Dolan
+  Friday, December 29 2023
+*/
+
+package edgrind;
+
+import java.awt.Color;
+
+/**
+   A model's shaded colors, indexed by the quantized cosine of the angle
+   between a surface normal and the light.
+   <p>
+   The Rasterizer keeps one per model. Lighting a pixel is then a dot
+   product and a table read, no color is built per pixel. update() rebuilds
+   the table only when the model's color or the light direction has changed
+   since the last build.
+   </p>
+*/
+class ShadeTable {
+    /** Number of intensity steps between unlit and fully lit. */
+    static final int LEVELS = 1024;
+    /** 0xAARRGGBB, rgb[i] is the color at intensity i / LEVELS. */
+    final int[] rgb = new int[LEVELS + 1];
+    // what the table was built for
+    private int color;
+    private double lx, ly, lz = Double.NaN;
+    /**
+       Rebuild the table if the color or light direction has changed.
+       @param c the model's color
+       @param lx, ly, lz the unit light direction, in modelview coordinates
+    */
+    void update(Color c, double lx, double ly, double lz) {
+        int argb = c.getRGB();
+        if (argb == color && lx == this.lx && ly == this.ly && lz == this.lz)
+            return;
+        color = argb;
+        this.lx = lx;
+        this.ly = ly;
+        this.lz = lz;
+        int r = c.getRed(), g = c.getGreen(), b = c.getBlue();
+        for (int i=0; i<=LEVELS; ++i)
+            rgb[i] = Util.scaleRGB(r, g, b, (double)i / LEVELS);
+    }
+    /**
+       Get the shaded color of a surface.
+       @param cos the cosine of the angle between the surface's normal and
+       the light, anything outside [0, 1] is clamped
+    */
+    int shade(double cos) {
+        if (cos <= 0)
+            return rgb[0];
+        if (cos >= 1)
+            return rgb[LEVELS];
+        return rgb[(int)(cos * LEVELS + .5)];
+    }
+}
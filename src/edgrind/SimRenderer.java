@@ -0,0 +1,362 @@
+/*
+  SimRenderer.java
+  S. Edward Dolan
+  Wednesday, December 27 2023
+*/
+
+package edgrind;
+
+import java.util.List;
+import java.util.Arrays;
+//
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+//
+import edgrind.geom.*;
+
+/**
+   Render SimView's frames on a dedicated thread.
+   <p>
+   SimView captures everything a frame depends on in a Frame and hands it to
+   request(), which returns immediately. The render thread draws the latest
+   requested Frame into the back buffer then swaps it with the front buffer
+   and asks the view to repaint. SimView.paintComponent() only blits the
+   front buffer, so the event dispatch thread never waits on a frame.
+   </p>
+   <p>
+   If a newer Frame is requested while one is being rendered, the one in
+   flight is cancelled and its partial image is never shown.
+   </p>
+   <p>
+   The triangles of models that don't change between frames of the same
+   view are kept in a static layer, see rasterize(). When a wheel is swapped
+   only the new wheel is rasterized, on top of a copy of the layer.
+   </p>
+   <p>
+   Models are rasterized nearest first, each flushed before the next is
+   added, so the Rasterizer can skip what's hidden behind them.
+   </p>
+*/
+class SimRenderer implements Runnable {
+    /**
+       The state a frame is rendered from, captured on the EDT.
+       <p>
+       Mat4 is never modified in place, so the matrices are shared with the
+       view rather than copied.
+       </p>
+    */
+    static class Frame {
+        /** The models, null for an empty slot. */
+        Model[] models;
+        /** Per model, the matrix that places it, see addInstance(). */
+        Mat4[] matrices;
+        Mat4 mvm, pjm, nsm;
+        RenderMode mode;
+        /** Size of the rendered image, in pixels. */
+        int width, height;
+        /** World units per pixel of the view, used to size the axis. */
+        double pixelSize;
+        /**
+           Set the models from every node of a scene graph.
+           <p>
+           Each node gets a slot, even one without a model, so a slot
+           keeps its index while models come and go.
+           </p>
+        */
+        void setScene(SceneNode root) {
+            List<SceneNode> nodes = root.flatten();
+            models = new Model[nodes.size()];
+            matrices = new Mat4[nodes.size()];
+            for (int i=0; i<models.length; ++i) {
+                models[i] = nodes.get(i).getModel();
+                matrices[i] = nodes.get(i).getInstanceMatrix();
+            }
+        }
+        /**
+           Set models that are placed by their own matrices.
+           @param models the models, null elements are skipped
+        */
+        void setModels(Model[] models) {
+            this.models = models;
+            matrices = new Mat4[models.length];
+            for (int i=0; i<models.length; ++i)
+                if (models[i] != null)
+                    matrices[i] = models[i].getMatrix();
+        }
+    }
+    SimView view;
+    Rasterizer rasterizer = new Rasterizer();
+    EdgeStage edgeStage = new EdgeStage();
+    // front and back buffers, bufs[front] is the last completed frame
+    private final FrameBuffer[] bufs = new FrameBuffer[2];
+    private int front = -1;
+    // guarded by this
+    private Frame pending, current;
+    private Thread thread;
+    // only touched by the render thread
+    private Frame last;
+    private long[] lastVersions;
+    /** The color and depth of the layer's models, nothing else. */
+    private FrameBuffer layer;
+    private Frame layerFrame;
+    private long[] layerVersions;
+    /** Per model slot, true if the model is drawn in the layer. */
+    private boolean[] layerSlots;
+    /** frontToBack() scratch, model slots and their nearest depths. */
+    private int[] order = new int[0];
+    private double[] near = new double[0];
+    SimRenderer(SimView view) {
+        this.view = view;
+    }
+    /**
+       Render the frame as soon as possible, cancelling the one in flight.
+    */
+    synchronized void request(Frame frame) {
+        pending = frame;
+        if (current != null)
+            rasterizer.cancel();
+        if (thread == null) {
+            thread = new Thread(this, "SimRenderer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+    /**
+       Draw the last completed frame, stretched to the given size.
+       @return false if no frame has been completed yet
+    */
+    synchronized boolean blit(Graphics g, int width, int height) {
+        if (front < 0)
+            return false;
+        g.drawImage(bufs[front].getImage(), 0, 0, width, height, null);
+        return true;
+    }
+    @Override
+    public void run() {
+        for (;;) {
+            Frame frame;
+            int back;
+            synchronized (this) {
+                while (pending == null) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                current = frame = pending;
+                pending = null;
+                rasterizer.cancelled = false;
+                back = front == 0 ? 1 : 0;
+            }
+            FrameBuffer fb = bufs[back];
+            if (fb == null || fb.width != frame.width ||
+                fb.height != frame.height)
+                fb = bufs[back] = new FrameBuffer(frame.width, frame.height);
+            render(frame, fb);
+            synchronized (this) {
+                current = null;
+                if (rasterizer.cancelled)
+                    continue;
+                front = back;
+            }
+            view.repaint();
+        }
+    }
+    /**
+       Render the frame into the frame buffer.
+       <p>
+       Returns early, leaving a partial image, if the rasterizer is cancelled.
+       </p>
+    */
+    void render(Frame f, FrameBuffer fb) {
+        fb.clear(Config.getBackgroundColor());
+        Graphics2D g2 = fb.getImage().createGraphics();
+        try {
+            if (f.mode == RenderMode.WIRE) {
+                for (int i=0; i<f.models.length; ++i) {
+                    if (rasterizer.cancelled)
+                        return;
+                    if (f.models[i] != null)
+                        edgeStage.drawWire(f.models[i], f.matrices[i], f.mvm,
+                                           f.pjm, f.nsm, g2, f.width,
+                                           f.height);
+                }
+            }
+            else {
+                if (!rasterize(f, fb))
+                    return;
+                if (f.mode == RenderMode.HIDDEN_LINE)
+                    // depth test the edges against the triangles
+                    for (int i=0; i<f.models.length; ++i) {
+                        if (rasterizer.cancelled)
+                            return;
+                        if (f.models[i] != null)
+                            edgeStage.drawHiddenLines(f.models[i],
+                                                      f.matrices[i], f.mvm,
+                                                      f.pjm, f.nsm, fb);
+                    }
+            }
+            renderOriginAxis(f, g2);
+        }
+        finally {
+            g2.dispose();
+        }
+    }
+    /**
+       Rasterize the frame's triangles, only depth for HIDDEN_LINE.
+       <p>
+       If the static layer was rendered from the same view and none of its
+       models has changed, it's copied into the frame buffer and only the
+       remaining models are rasterized. Otherwise the layer is rebuilt from
+       the models that haven't changed since the last frame of this view,
+       before the rest are drawn. A view change rebuilds nothing until the
+       view holds still for a second frame.
+       </p>
+       @return false if the rasterizer was cancelled
+    */
+    private boolean rasterize(Frame f, FrameBuffer fb) {
+        int n = f.models.length;
+        long[] versions = new long[n];
+        for (int i=0; i<n; ++i)
+            if (f.models[i] != null)
+                versions[i] = f.models[i].getVersion();
+        boolean[] inLayer;
+        if (isLayerValid(f, versions)) {
+            fb.copy(layer);
+            inLayer = layerSlots;
+        }
+        else {
+            inLayer = new boolean[n];
+            boolean any = false;
+            if (last != null && isSameView(last, f))
+                for (int i=0; i<n; ++i)
+                    any |= inLayer[i] = f.models[i] != null &&
+                        isSameInstance(f, last, i) &&
+                        versions[i] == lastVersions[i];
+            layerFrame = null;
+            if (any) {
+                rasterize(f, fb, inLayer, true);
+                if (rasterizer.cancelled)
+                    return false;
+                if (layer == null || layer.width != fb.width ||
+                    layer.height != fb.height)
+                    layer = new FrameBuffer(fb.width, fb.height);
+                layer.copy(fb);
+                layerFrame = f;
+                layerVersions = versions;
+                layerSlots = inLayer;
+            }
+        }
+        rasterize(f, fb, inLayer, false);
+        if (rasterizer.cancelled)
+            return false;
+        last = f;
+        lastVersions = versions;
+        return true;
+    }
+    /**
+       Rasterize the models whose inLayer flag equals layered.
+    */
+    private void rasterize(Frame f, FrameBuffer fb, boolean[] inLayer,
+                           boolean layered) {
+        rasterizer.begin(fb);
+        for (int i : frontToBack(f)) {
+            Model model = f.models[i];
+            if (model == null || inLayer[i] != layered)
+                continue;
+            if (f.mode == RenderMode.HIDDEN_LINE)
+                rasterizer.addModelDepth(model, f.matrices[i], f.mvm, f.pjm,
+                                         f.nsm);
+            else
+                rasterizer.addModel(model, f.matrices[i], f.mvm, f.pjm,
+                                    f.nsm, f.mode == RenderMode.SMOOTH);
+            if (rasterizer.occlusion)
+                // this model's depth hides the ones after it
+                rasterizer.flush();
+        }
+        rasterizer.flush();
+    }
+    /**
+       Get the indices of the frame's model slots, nearest model first.
+    */
+    private int[] frontToBack(Frame f) {
+        int n = f.models.length;
+        if (order.length != n) {
+            order = new int[n];
+            near = new double[n];
+        }
+        // insertion sort, a frame has few model slots
+        for (int i=0; i<n; ++i) {
+            double d = f.models[i] == null ? Double.NEGATIVE_INFINITY
+                : rasterizer.nearestDepth(f.models[i], f.matrices[i], f.mvm,
+                                          f.pjm, f.nsm);
+            int j = i;
+            for (; j > 0 && near[j - 1] < d; --j) {
+                order[j] = order[j - 1];
+                near[j] = near[j - 1];
+            }
+            order[j] = i;
+            near[j] = d;
+        }
+        return order;
+    }
+    /**
+       Find if the static layer can be used for the frame.
+    */
+    private boolean isLayerValid(Frame f, long[] versions) {
+        if (layerFrame == null || !isSameView(layerFrame, f) ||
+            layerSlots.length != f.models.length)
+            return false;
+        for (int i=0; i<layerSlots.length; ++i)
+            if (layerSlots[i] && (!isSameInstance(f, layerFrame, i) ||
+                                  versions[i] != layerVersions[i]))
+                return false;
+        return true;
+    }
+    /**
+       Find if a slot of two frames holds the same model in the same place.
+    */
+    private static boolean isSameInstance(Frame a, Frame b, int i) {
+        return i < b.models.length && a.models[i] == b.models[i] &&
+            (a.models[i] == null || isEqual(a.matrices[i], b.matrices[i]));
+    }
+    /**
+       Find if two frames have the same camera, size, and render mode.
+       <p>
+       SimView builds a new projection matrix whenever it fits the view,
+       even if nothing moved, so the matrices are compared by value.
+       </p>
+    */
+    private static boolean isSameView(Frame a, Frame b) {
+        return a.width == b.width && a.height == b.height &&
+            a.mode == b.mode && isEqual(a.mvm, b.mvm) && isEqual(a.pjm, b.pjm);
+    }
+    private static boolean isEqual(Mat4 a, Mat4 b) {
+        return a == b || Arrays.equals(a.a, b.a);
+    }
+    /**
+       Render x, y, and z lines from the world origin.
+       <p>
+       The lines are rendered red, green, and blue, respectively. Their length
+       will remain constant regardless of zoom.
+       </p>
+    */
+    void renderOriginAxis(Frame f, Graphics2D g2) {
+        double ps = f.pixelSize * 100; // 100 pixel axis length
+        Mat4 m = f.mvm.mul(f.pjm).mul(f.nsm);
+        Vec3 O = m.mul(new Vec3());
+        Vec3 I = m.mul(new Vec3(1 * ps, 0, 0));
+        Vec3 J = m.mul(new Vec3(0, 1 * ps, 0));
+        Vec3 K = m.mul(new Vec3(0, 0, 1 * ps));
+        g2.setColor(Color.red);
+        g2.drawLine((int)O.x, (int)O.y, (int)I.x, (int)I.y);
+        g2.setColor(Color.green);
+        g2.drawLine((int)O.x, (int)O.y, (int)J.x, (int)J.y);
+        g2.setColor(Color.blue);
+        g2.drawLine((int)O.x, (int)O.y, (int)K.x, (int)K.y);
+    }
+}
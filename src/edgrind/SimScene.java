@@ -0,0 +1,67 @@
+/*
+  SimScene.java
+  S. Edward Dolan
+  Monday, January 1 2024
+*/
+
+package edgrind;
+
+import edgrind.geom.*;
+//
+import edgrind.sketch.Sketch;
+
+/**
+   The machine SimView draws, as a scene graph.
+   <p>
+   <pre>
+   Machine
+     Spindle 1            translate(SPINDLE_X, 0, 0)
+       Spindle 1 adapter
+         Spindle 1 wheel 1..3
+     Spindle 2            translate(-SPINDLE_X, 0, 0)
+       ...
+     A axis
+       Chuck
+         Collet
+           Part
+   </pre>
+   </p>
+   <p>
+   Moving a spindle or the A axis is a change to one node's matrix. The
+   nodes' models are the sketches' models, whose meshes come from
+   Sketch.getMeshCache(). Two wheels of the same type, on either spindle,
+   draw the same meshes, and loading a wheel pack again reuses them.
+   </p>
+*/
+class SimScene {
+    /** The spindles' distance from the A axis along x. */
+    static final double SPINDLE_X = 5;
+    final SceneNode root = new SceneNode("Machine");
+    final SceneNode[] spindles = new SceneNode[2];
+    final SceneNode[] adapters = new SceneNode[2];
+    final SceneNode[][] wheels = new SceneNode[2][3];
+    final SceneNode aAxis, chuck, collet, part;
+    SimScene() {
+        for (int i=0; i<2; ++i) {
+            String name = "Spindle " + (i + 1);
+            spindles[i] = root.add(new SceneNode(name));
+            spindles[i].setMatrix(Mat4.translate(i == 0 ? SPINDLE_X
+                                                 : -SPINDLE_X, 0, 0));
+            adapters[i] = spindles[i].add(new SceneNode(name + " adapter"));
+            for (int j=0; j<3; ++j)
+                wheels[i][j] = adapters[i]
+                    .add(new SceneNode(name + " wheel " + (j + 1)));
+        }
+        aAxis = root.add(new SceneNode("A axis"));
+        chuck = aAxis.add(new SceneNode("Chuck"));
+        collet = chuck.add(new SceneNode("Collet"));
+        part = collet.add(new SceneNode("Part"));
+    }
+    /**
+       Set the node's model to the sketch's.
+       @param sketch the sketch, null to clear the node
+    */
+    void setModel(SceneNode node, Sketch sketch) {
+        node.setModel(sketch == null ? null : sketch.getModel());
+    }
+}
@@ -6,7 +6,9 @@
 
 package edgrind;
 
+import java.util.Map;
 import java.util.List;
+import java.util.HashMap;
 import java.util.ArrayList;
 // 
 import java.awt.Color;
@@ -26,26 +28,22 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-//
-import java.awt.image.BufferedImage;
 // 
 import javax.swing.JMenu;
 import javax.swing.JPanel;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
+import javax.swing.Timer;
 //
 import edgrind.geom.*;
 //
+import edgrind.sketch.Sketch;
+import edgrind.sketch.SketchSpecsListener;
+//
 import edgrind.error.ZeroError;
 //
 import edgrind.Config;
 
-enum RenderMode {
-    WIRE,
-    FLAT,
-    SMOOTH
-};
-
 @SuppressWarnings("serial")
 public class SimView extends JPanel implements MouseMotionListener,
                                                MouseListener,
@@ -67,9 +65,10 @@ public class SimView extends JPanel implements MouseMotionListener,
     double zd = 0;
     SimPopupMenu popupMenu;
     int downButton = 0;
-    BufferedImage colorBuf;
-    Graphics2D g2i;
-    DepthBuffer depthBuf;
+    SimRenderer renderer = new SimRenderer(this);
+    // reduced quality rendering while the view is being dragged or zoomed
+    boolean interacting = false;
+    Timer refineTimer;
     double aspect = 1;
     Vec3 rotC = new Vec3();
     Vec2 wrdC = new Vec2();
@@ -81,19 +80,45 @@ public class SimView extends JPanel implements MouseMotionListener,
                              RenderingHints.VALUE_ANTIALIAS_ON);
     // -----------------------------------------------------------------
     // Models
-    static final int SP1_ADAPT_IDX = 0;
-    static final int SP2_ADAPT_IDX = 1;
-    static final int SP1_WHEEL1_IDX = 2;
-    static final int SP1_WHEEL2_IDX = 3;
-    static final int SP1_WHEEL3_IDX = 4;
-    static final int SP2_WHEEL1_IDX = 5;
-    static final int SP2_WHEEL2_IDX = 6;
-    static final int SP2_WHEEL3_IDX = 7;
-    static final int CHUCK_IDX = 8;
-    static final int COLLET_IDX = 9;
-    static final int PART_IDX = 10;
-    Model[] models = new Model[11];
-    Model currentModel;
+    SimScene scene = new SimScene();
+    /**
+       A point picked on a model's surface.
+    */
+    static class Pick {
+        /** The node whose model was picked. */
+        SceneNode node;
+        /** The point, in world coordinates. */
+        Vec3 point;
+    }
+    // the last pick, or the last two when measuring
+    List<Pick> picks = new ArrayList<Pick>();
+    /**
+       Keeps a node's model up to date with the dimensions of the sketch it
+       was made from.
+    */
+    class ModelUpdater implements SketchSpecsListener {
+        final SceneNode node;
+        final Sketch sketch;
+        ModelUpdater(SceneNode node, Sketch sketch) {
+            this.node = node;
+            this.sketch = sketch;
+        }
+        /**
+           Replace the model with the edited sketch's, without fitting the
+           view to it so it doesn't jump while it's being edited. Only the
+           changed parts of the sketch's meshes are revolved again, see
+           Sketch.revolvePath().
+        */
+        @Override
+        public void onSpecsChange(Dict specs) {
+            picks.clear();
+            scene.setModel(node, sketch);
+            redraw();
+        }
+    }
+    // each node made from a sketch to the listener on that sketch
+    Map<SceneNode, ModelUpdater> updaters
+        = new HashMap<SceneNode, ModelUpdater>();
     // 
     protected final static BasicStroke stroke
         = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
@@ -104,29 +129,73 @@ public class SimView extends JPanel implements MouseMotionListener,
         addMouseWheelListener(this);
         addComponentListener(this);
         setComponentPopupMenu(popupMenu = new SimPopupMenu(this));
+        refineTimer = new Timer(Config.getRefineDelay(), new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    interacting = false;
+                    redraw();
+                }
+            });
+        refineTimer.setRepeats(false);
+    }
+    /**
+       Repaint at interactive quality.
+       <p>
+       Each call pushes back the full quality refinement frame until the
+       input has been idle for Config.getRefineDelay() milliseconds.
+       </p>
+    */
+    protected void interact() {
+        interacting = true;
+        refineTimer.setInitialDelay(Config.getRefineDelay());
+        refineTimer.restart();
+        redraw();
+    }
+    /**
+       Get the render mode used while interacting.
+       <p>
+       This is Config.getInteractiveMode() unless the current render mode is
+       cheaper. The modes are declared cheapest first.
+       </p>
+    */
+    protected RenderMode interactiveMode() {
+        RenderMode mode;
+        switch (Config.getInteractiveMode()) {
+            case "wire": mode = RenderMode.WIRE; break;
+            case "hidden-line": mode = RenderMode.HIDDEN_LINE; break;
+            case "flat": mode = RenderMode.FLAT; break;
+            default: mode = RenderMode.SMOOTH; break;
+        }
+        return mode.compareTo(renderMode) < 0 ? mode : renderMode;
     }
     protected void setRenderMode(RenderMode mode) {
         renderMode = mode;
-        repaint();
+        redraw();
     }
     protected void rotateScene(Vec3 axis, double angle) {
-        mvm = mvm.mul(Mat4.translate(Vec3.neg(rotC)))
-            .mul(Mat4.axisAngle(axis, Math.toRadians(angle)))
-            .mul(Mat4.translate(rotC));
+        // a new matrix, the last frame may still be rendering from mvm
+        Mat4 m = mvm.mul(Mat4.translate(-rotC.x, -rotC.y, -rotC.z));
+        m.mulInto(Mat4.axisAngle(axis, Math.toRadians(angle)), m);
+        mvm = m.mulInto(Mat4.translate(rotC), m);
     }
     protected double pixelSize() {
-        return 2. / (pjm.a[0][0] * getWidth());
+        return 2. / (pjm.a[0] * getWidth());
     }
     protected void pan(double dx, double dy) {
         double ps = pixelSize();
         wrdC.sub(ps * dx, ps * -dy);
         ortho();
     }
+    /**
+       Fit the view to the scene's box.
+       <p>
+       The box is found from each model's cached bounds, see
+       Model.getBBox(), so fitting takes the same time however big the
+       meshes are.
+       </p>
+    */
     public void fitAll() {
-        AABBox bbox = new AABBox();
-        for (Model m : models)
-            if (m != null)
-                bbox.add(m.getBBox(mvm));
+        AABBox bbox = scene.root.getBBox(mvm);
         if (bbox.isValid()) {
             rotC = bbox.center();
             fit(bbox.leftTop(), bbox.rightBottom());
@@ -146,7 +215,7 @@ public class SimView extends JPanel implements MouseMotionListener,
             wrdH = h;
         wrdH *= 1.02;            // add some padding
         ortho();
-        repaint();
+        redraw();
     }
     protected void ortho() {
         wrdW = wrdH * aspect;
@@ -170,240 +239,106 @@ public class SimView extends JPanel implements MouseMotionListener,
         //
         aspect = (double)w / h;
         ortho();
-        // 
-        depthBuf = new DepthBuffer(w, h);
-        colorBuf = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        g2i = colorBuf.createGraphics();
-        // g2i.setRenderingHints(rhints);
-        repaint();
+        redraw();
     }
-    void renderWire(Mat4 m, Graphics2D g2) {
-        Color oldColor = g2.getColor();
-        g2.setColor(currentModel.getColor());
-        Mat4 tpm = Mat4.inverseTranspose(mvm);
-        Mat4 vpn = m.mul(nsm);   // viewport transformation matrix
-        Vec3 lookN = new Vec3(0, 0, -1);
-        for (Mesh mesh : currentModel) {
-            for (Tri3 t : mesh.tris) {
-                Vec3 triN = tpm.mul(t.n).norm();
-                if (triN.dot(lookN) > 0)
-                    continue;       // cull back faces
-                Vec3 v1 = vpn.mul(t.v1);
-                Vec3 v2 = vpn.mul(t.v2);
-                Vec3 v3 = vpn.mul(t.v3);
-                // TODO: shared triangle edges are being rendered twice
-                g2.drawLine((int)v1.x, (int)v1.y, (int)v2.x, (int)v2.y);
-                g2.drawLine((int)v2.x, (int)v2.y, (int)v3.x, (int)v3.y);
-                g2.drawLine((int)v3.x, (int)v3.y, (int)v1.x, (int)v1.y);
-            }
-        }
-        g2.setColor(oldColor);
-    }
-    void renderFlat(Graphics2D g2) {
-        for (Mesh mesh : currentModel) {
-            for (Tri3 t : mesh.tris) {
-                // get the triangle's modelview coordinates
-                Vec3 v1 = currentModel.getMatrix().mul(mvm).mul(t.v1);
-                Vec3 v2 = currentModel.getMatrix().mul(mvm).mul(t.v2);
-                Vec3 v3 = currentModel.getMatrix().mul(mvm).mul(t.v3);
-                // this normal is used to cull back faces
-                Vec3 triN = (Vec3.sub(v2, v1).cross(Vec3.sub(v3, v1))
-                             .norm().neg());
-                double d = triN.dot(new Vec3(0, 0, -1));
-                if (d < 0)
-                    continue;
-                // get the triangle's xyz screen coordinates
-                Mat4 mm = pjm.mul(nsm);
-                v1 = mm.mul(v1);
-                v2 = mm.mul(v2);
-                v3 = mm.mul(v3);
-                // this normal is used to find the pixel depth
-                triN = Vec3.sub(v2, v1).cross(Vec3.sub(v3, v1)).norm();
-                Vec3 rayP = new Vec3();
-                Vec3 rayN = new Vec3(0, 0, -1);
-                Vec3 out = new Vec3();
-                // triangle 2d bounding box
-                Vec4 tribb = Algo.bbox2d(v1, v2, v3);
-                // clip the bbox to the window
-                tribb.x = Math.max(0, tribb.x);
-                tribb.y = Math.max(0, tribb.y);
-                tribb.z = Math.min(colorBuf.getWidth() - 1, tribb.z);
-                tribb.w = Math.min(colorBuf.getHeight() - 1, tribb.w);
-                double triArea = Algo.triArea2d(v1, v2, v3);
-                // flat shade, same color for every pixel in this triangle
-                int color
-                    = Util.scaleColor(currentModel.getColor(), d).getRGB();
-                // for each pixel in the triangle's bounding box, left to
-                // right, top to bottom.
-                for (int y=(int)tribb.y; y<=(int)tribb.w; ++y) {
-                    boolean dotting = false;
-                    for (int x=(int)tribb.x; x<=(int)tribb.z; ++x) {
-                        double b1 = (((y - v3.y) * (v2.x - v3.x) +
-                                      (v2.y - v3.y) * (v3.x - x))
-                                     / triArea);
-                        double b2 = (((y - v1.y) * (v3.x - v1.x) +
-                                      (v3.y - v1.y) * (v1.x - x))
-                                     / triArea);
-                        double b3 = (((y - v2.y) * (v1.x - v2.x) +
-                                      (v1.y - v2.y) * (v2.x - x))
-                                     / triArea);
-                        if (b1 >= 0 && b1 <= 1 &&
-                            b2 >= 0 && b2 <= 1 &&
-                            b3 >= 0 && b3 <= 1) {
-                            // pixel is in the triangle.
-                            rayP.set(x, y, 1); // near plane at 1
-                            Algo.xsectRayPlane(v1, triN, rayP, rayN, out);
-                            if (depthBuf.testAndSet(out.z, x, y))
-                                colorBuf.setRGB(x, y, color);
-                            dotting = true;
-                        }
-                        else if (dotting)
-                            // exited right side of the triangle
-                            break;
-                    }
-                }
-            }
+    /**
+       Request a new frame of the current scene and camera.
+       <p>
+       The frame is rendered by the SimRenderer's thread, which repaints the
+       view when it's done. While interacting, the frame is rendered at
+       1/Config.getInteractiveScale() resolution in interactiveMode().
+       </p>
+    */
+    void redraw() {
+        int w = getWidth(), h = getHeight();
+        if (w == 0 || h == 0)
+            return;
+        SimRenderer.Frame f = new SimRenderer.Frame();
+        f.setScene(scene.root);
+        f.mvm = mvm;
+        f.pjm = pjm;
+        f.mode = renderMode;
+        f.pixelSize = pixelSize();
+        if (interacting) {
+            int scale = Config.getInteractiveScale();
+            w = Math.max(1, w / scale);
+            h = Math.max(1, h / scale);
+            f.mode = interactiveMode();
         }
+        f.width = w;
+        f.height = h;
+        f.nsm = Mat4.ndcToScreen(new Vec4(0, 0, w, h));
+        renderer.request(f);
     }
-    void renderSmooth(Graphics2D g2) {
-        for (Mesh mesh : currentModel) {
-            for (Tri3 t : mesh.tris) {
-                // get the triangle's modelview coordinates
-                // get the triangle's modelview coordinates
-                Vec3 v1 = currentModel.getMatrix().mul(mvm).mul(t.v1);
-                Vec3 v2 = currentModel.getMatrix().mul(mvm).mul(t.v2);
-                Vec3 v3 = currentModel.getMatrix().mul(mvm).mul(t.v3);
-                // Vec3 v1 = mvm.mul(t.v1);
-                // Vec3 v2 = mvm.mul(t.v2);
-                // Vec3 v3 = mvm.mul(t.v3);
-                // this normal is used to cull back faces
-                Vec3 triN = (Vec3.sub(v2, v1).cross(Vec3.sub(v3, v1))
-                             .norm().neg());
-                double d = triN.dot(new Vec3(0, 0, -1));
-                if (d < 0)
-                    continue;
-                // get the triangle's xyz screen coordinates
-                Mat4 mm = pjm.mul(nsm);
-                v1 = mm.mul(v1);
-                v2 = mm.mul(v2);
-                v3 = mm.mul(v3);
-                // this normal is used to find the pixel depth
-                triN = Vec3.sub(v2, v1).cross(Vec3.sub(v3, v1)).norm();
-                // these normals are used for per-pixel lighting
-                Mat4 tpm = Mat4.inverseTranspose(mvm);
-                Vec3 n1 = tpm.mul(t.n1).norm();
-                Vec3 n2 = tpm.mul(t.n2).norm();
-                Vec3 n3 = tpm.mul(t.n3).norm();
-                // for depth buffer checking
-                Vec3 rayP = new Vec3(); // next pixel location
-                Vec3 rayN = new Vec3(0, 0, -1);
-                Vec3 out = new Vec3();
-                // triangle 2d bounding box
-                Vec4 tribb = Algo.bbox2d(v1, v2, v3);
-                // clip the bbox to the window
-                tribb.x = Math.max(0, tribb.x);
-                tribb.y = Math.max(0, tribb.y);
-                tribb.z = Math.min(colorBuf.getWidth() - 1, tribb.z);
-                tribb.w = Math.min(colorBuf.getHeight() - 1, tribb.w);
-                double triArea = Algo.triArea2d(v1, v2, v3);
-                /*
-                  For each pixel in the triangle's bounding box, left to right,
-                  top to bottom.
-                */
-                for (int y=(int)tribb.y; y<=(int)tribb.w; ++y) {
-                    boolean dotting = false;
-                    // System.out.println("row =============================");
-                    for (int x=(int)tribb.x; x<=(int)tribb.z; ++x) {
-                        double b1 = (((y - v3.y) * (v2.x - v3.x) +
-                                      (v2.y - v3.y) * (v3.x - x))
-                                     / triArea);
-                        double b2 = (((y - v1.y) * (v3.x - v1.x) +
-                                      (v3.y - v1.y) * (v1.x - x))
-                                     / triArea);
-                        double b3 = (((y - v2.y) * (v1.x - v2.x) +
-                                      (v1.y - v2.y) * (v2.x - x))
-                                     / triArea);
-                        if (b1 >= 0 && b1 <= 1 &&
-                            b2 >= 0 && b2 <= 1 &&
-                            b3 >= 0 && b3 <= 1) {
-                            // pixel is in the triangle.
-                            rayP.set(x, y, 1); // at near plane
-                            Algo.xsectRayPlane(v1, triN, rayP, rayN, out);
-                            if (depthBuf.testAndSet(out.z, x, y)) {
-                                /*
-                                  now use the vertice normals to calculate the
-                                  per/pixel lighting
-                                */
-                                Vec3 hitNormal =
-                                    Vec3.mul(n1, b1).add(Vec3.mul(n2, b2))
-                                    .add(Vec3.mul(n3, b3)).norm();
-                                int color
-                                    = Util.scaleColor(currentModel.getColor(),
-                                                      hitNormal
-                                                      .dot(new Vec3(0, 0,
-                                                                    1)))
-                                    .getRGB();
-                                colorBuf.setRGB(x, y, color);
-                            }
-                            dotting = true;
-                        }
-                        else if (dotting)
-                            // exited right side of the triangle
-                            break;
-                    }
-                }
-            }
-        }
-    }    
-    void render(Graphics2D g2) {
-        // g2.setRenderingHints(rhints);
-        g2.setColor(Config.getBackgroundColor());
-        g2.fillRect(0, 0, getWidth(), getHeight());
-        depthBuf.clear();
-        Mat4 m = mvm.mul(pjm);
-        for (Model model : models) {
-            if (model == null)
-                continue;
-            currentModel = model;
-            switch (renderMode) {
-                case WIRE:
-                    renderWire(currentModel.getMatrix().mul(m), g2);
-                    break;
-                case FLAT:
-                    renderFlat(g2);
-                    break;
-                case SMOOTH:
-                    renderSmooth(g2);
-                    break;
-            }
+    /**
+       Blit the last frame completed by the SimRenderer.
+    */
+    @Override
+    public void paintComponent(Graphics g) {
+        if (!renderer.blit(g, getWidth(), getHeight())) {
+            g.setColor(Config.getBackgroundColor());
+            g.fillRect(0, 0, getWidth(), getHeight());
         }
-        renderOriginAxis(m, g2);
+        paintPicks((Graphics2D)g);
     }
     /**
-       Render x, y, and z lines from the world origin.
+       Find the model surface under a window pixel.
        <p>
-       The lines are rendered red, green, and blue, respectively. Their length
-       will remain constant regardless of zoom.
+       The pixel is unprojected to a ray through the whole depth of the
+       view, from the near plane to the far. Each scene node's model is
+       tested with Model.pick(), which uses its meshes' BVHs.
        </p>
+       @return the nearest pick, or null if there's no model under the pixel
     */
-    void renderOriginAxis(Mat4 m, Graphics2D g2) {
-        double ps = pixelSize() * 100; // 100 pixel axis length
-        Vec3 O = m.mul(nsm).mul(new Vec3());
-        Vec3 I = m.mul(nsm).mul(new Vec3(1 * ps, 0, 0));
-        Vec3 J = m.mul(nsm).mul(new Vec3(0, 1 * ps, 0));
-        Vec3 K = m.mul(nsm).mul(new Vec3(0, 0, 1 * ps));
-        g2.setColor(Color.red);
-        g2.drawLine((int)O.x, (int)O.y, (int)I.x, (int)I.y);
-        g2.setColor(Color.green);
-        g2.drawLine((int)O.x, (int)O.y, (int)J.x, (int)J.y);
-        g2.setColor(Color.blue);
-        g2.drawLine((int)O.x, (int)O.y, (int)K.x, (int)K.y);
+    Pick pick(int x, int y) {
+        Mat4 inv = Mat4.inverse(mvm.mul(pjm).mul(nsm));
+        // larger screen z is nearer
+        Vec3 p = inv.mul(new Vec3(x, y, 1));
+        Vec3 d = Vec3.sub(inv.mul(new Vec3(x, y, -1)), p);
+        Pick pick = null;
+        double t = Double.POSITIVE_INFINITY;
+        for (SceneNode node : scene.root.flatten()) {
+            if (node.getModel() == null)
+                continue;
+            BVH.Hit hit = node.getModel().pick(p, d, node.getWorldMatrix());
+            if (hit != null && hit.t < t) {
+                t = hit.t;
+                pick = new Pick();
+                pick.node = node;
+                pick.point = Vec3.add(p, Vec3.mul(d, t));
+            }
+        }
+        return pick;
     }
-    @Override
-    public void paintComponent(Graphics g) {
-        Graphics2D g2 = (Graphics2D)g;
-        render(g2i);
-        g2.drawImage(colorBuf, 0, 0, null); // swapishly the buffers
+    /**
+       Mark the picked points and list them, with the distance between them
+       when there are two.
+    */
+    protected void paintPicks(Graphics2D g2) {
+        if (picks.isEmpty())
+            return;
+        g2.setRenderingHints(rhints);
+        g2.setColor(Config.getDimLineColor());
+        Mat4 m = mvm.mul(pjm).mul(nsm);
+        int lineH = g2.getFontMetrics().getHeight();
+        int y = lineH;
+        Vec3 last = null;
+        for (Pick p : picks) {
+            Vec3 s = m.mul(p.point);
+            g2.draw(new Line2D.Double(s.x - 4, s.y, s.x + 4, s.y));
+            g2.draw(new Line2D.Double(s.x, s.y - 4, s.x, s.y + 4));
+            if (last != null)
+                g2.draw(new Line2D.Double(last.x, last.y, s.x, s.y));
+            last = s;
+            g2.drawString(String.format("%s: %.4f, %.4f, %.4f",
+                                        p.node.getName(), p.point.x,
+                                        p.point.y, p.point.z), 5, y);
+            y += lineH;
+        }
+        if (picks.size() == 2) {
+            Vec3 d = Vec3.sub(picks.get(1).point, picks.get(0).point);
+            g2.drawString(String.format("Distance: %.4f", d.mag()), 5, y);
+        }
     }
     @Override
     public void mouseWheelMoved(MouseWheelEvent e) {
@@ -427,7 +362,7 @@ public class SimView extends JPanel implements MouseMotionListener,
                      wrdC.y + dy * wrdH);
         }
         ortho();
-        repaint();
+        interact();
     }
     @Override
     public void mouseDragged(MouseEvent e) {
@@ -435,13 +370,13 @@ public class SimView extends JPanel implements MouseMotionListener,
             Vec2 v = new Vec2(e.getX(), e.getY()).sub(mousePos);
             rotateScene(new Vec3(v.y, v.x, 0), rotFactor * v.mag());
             mousePos.set(e.getX(), e.getY());
-            repaint();
+            interact();
         }
         else if (downButton == MouseEvent.BUTTON2) {
             Vec2 v = new Vec2(e.getX(), e.getY()).sub(mousePos);
             pan(v.x, v.y);
             mousePos.set(e.getX(), e.getY());
-            repaint();
+            interact();
         }
     }
     @Override
@@ -454,6 +389,20 @@ public class SimView extends JPanel implements MouseMotionListener,
     @Override public void mouseReleased(MouseEvent e) {
         downButton = 0;
     }
+    /**
+       Pick the surface under the mouse. With shift held, a second pick is
+       added to measure the distance from the first.
+    */
+    @Override public void mouseClicked(MouseEvent e) {
+        if (e.getButton() != MouseEvent.BUTTON1)
+            return;
+        Pick p = pick(e.getX(), e.getY());
+        if (!e.isShiftDown() || picks.size() > 1)
+            picks.clear();
+        if (p != null)
+            picks.add(p);
+        repaint();
+    }
     /* ----------------------------------------------------------------------
        Fixed views
     */
@@ -488,64 +437,57 @@ public class SimView extends JPanel implements MouseMotionListener,
     // ======================================================================
     // Model Changed
     // ======================================================================
-    public void adapterChanged(Model model, int spindle) {
+    /**
+       @param sketch the adapter's sketch, null if there's none
+       @param spindle 1 or 2
+    */
+    public void adapterChanged(Sketch sketch, int spindle) {
         System.out.println("adapterChanged");
-        if (spindle == 1) {
-            model.setMatrix(Mat4.translate(5, 0, 0));
-            models[SP1_ADAPT_IDX] = model;
-        }
-        else {
-            model.setMatrix(Mat4.translate(-5, 0, 0));
-            models[SP2_ADAPT_IDX] = model;
-        }
+        picks.clear();
+        setModel(scene.adapters[spindle - 1], sketch);
         fitAll();
     }
-    public void wheelChanged(Model model, int spindle, int wheel) {
+    public void wheelChanged(Sketch sketch, int spindle, int wheel) {
         System.out.println("wheelChanged");
-        if (spindle == 1) {
-            switch (wheel) {
-                case 1:
-                    models[SP1_WHEEL1_IDX] = model;
-                    break;
-                case 2:
-                    models[SP1_WHEEL2_IDX] = model;
-                    break;
-                case 3:
-                    models[SP1_WHEEL3_IDX] = model;
-                    break;
-            }
-        }
-        else {
-            switch (wheel) {
-                case 1:
-                    models[SP2_WHEEL1_IDX] = model;
-                    break;
-                case 2:
-                    models[SP2_WHEEL2_IDX] = model;
-                    break;
-                case 3:
-                    models[SP2_WHEEL3_IDX] = model;
-                    break;
-            }
-        }
+        picks.clear();
+        setModel(scene.wheels[spindle - 1][wheel - 1], sketch);
         fitAll();
     }
     //
-    public void chuckChanged(Model model) {
+    public void chuckChanged(Sketch sketch) {
         System.out.println("chuckChanged");
-        models[CHUCK_IDX] = model;
+        picks.clear();
+        setModel(scene.chuck, sketch);
         fitAll();
     }
-    public void colletChanged(Model model) {
+    public void colletChanged(Sketch sketch) {
         System.out.println("colletChanged");
-        models[COLLET_IDX] = model;
+        picks.clear();
+        setModel(scene.collet, sketch);
         fitAll();
     }
-    public void partChanged(Model model) {
+    public void partChanged(Sketch sketch) {
         System.out.println("partChanged");
-        models[PART_IDX] = model;
+        picks.clear();
+        setModel(scene.part, sketch);
         fitAll();
     }
+    /**
+       Set the node's model to the sketch's, and listen for edits to the
+       sketch's dimensions in place of the node's last sketch.
+       @param sketch null to remove the model
+    */
+    private void setModel(SceneNode node, Sketch sketch) {
+        ModelUpdater u = updaters.remove(node);
+        if (u != null)
+            u.sketch.removeSpecsListener(u);
+        scene.setModel(node, sketch);
+        if (sketch != null) {
+            u = new ModelUpdater(node, sketch);
+            sketch.addSpecsListener(u);
+            updaters.put(node, u);
+        }
+    }
     /* ----------------------------------------------------------------------
        Unused ComponentListener methods
     */
@@ -557,7 +499,6 @@ public class SimView extends JPanel implements MouseMotionListener,
     */
     @Override public void mouseExited(MouseEvent e) {}
     @Override public void mouseEntered(MouseEvent e) {}
-    @Override public void mouseClicked(MouseEvent e) {}
 }
 
 @SuppressWarnings("serial")
@@ -578,7 +519,8 @@ class SimPopupMenu extends JPopupMenu implements ActionListener {
             mi.addActionListener(this);
             viewMenu.add(mi);    
         }
-        for (String label : new String[] {"Wire", "Flat", "Smooth"}) {
+        for (String label : new String[] {"Wire", "Hidden Line", "Flat",
+                                          "Smooth"}) {
             mi = new JMenuItem(label);
             mi.addActionListener(this);
             renderMenu.add(mi);    
@@ -597,45 +539,12 @@ class SimPopupMenu extends JPopupMenu implements ActionListener {
             case "Bottom": view.bottomView(); break;
             case "Isometric": view.isometricView(); break;
             case "Wire": view.setRenderMode(RenderMode.WIRE); break;
+            case "Hidden Line":
+                view.setRenderMode(RenderMode.HIDDEN_LINE);
+                break;
             case "Flat": view.setRenderMode(RenderMode.FLAT); break;
             case "Smooth": view.setRenderMode(RenderMode.SMOOTH); break;
         }
     }
     
 }
-
-class DepthBuffer {
-    double a[][];
-    double minDepth;
-    int width, height;
-    DepthBuffer(int width, int height) {
-        this(width, height, -1);
-    }
-    DepthBuffer(int width, int height, double minDepth) {
-        this.width = width;
-        this.height = height;
-        this.minDepth = minDepth;
-        a = new double[width][height];
-        clear();
-    }
-    /**
-       Find if a given pixel is in front of another.
-
-       @param z pixel depth in NDC
-       @param x pixel x coordinate
-       @param y pixel y coordinate
-       @return true if z is in front of the value at x and y
-    */
-    boolean testAndSet(double z, int x, int y) {
-        if (a[x][y] < z) {
-            a[x][y] = z;
-            return true;
-        }
-        return false;
-    }
-    void clear() {
-        for (int i=0; i<width; ++i)
-            for (int j=0; j<height; ++j)
-                a[i][j] = minDepth;
-    }
-}
@@ -299,7 +299,7 @@ public class SpindlePanel extends JPanel implements ItemListener,
             adapterSketch.showDims(false);
             sketchScene.addSketch(adapterSketch);
             wheelsPanel.mainFrame.simView
-                .adapterChanged(adapterSketch.getModel(), spindleNum);
+                .adapterChanged(adapterSketch, spindleNum);
         }
         catch (Exception ignore) {
             System.err.println("BOOM: SpindlePanel.loadAdapter: " +
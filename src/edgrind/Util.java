@@ -40,6 +40,22 @@ public class Util {
                          (int)(color.getGreen() * s),
                          (int)(color.getBlue() * s));
     }
+    /**
+       Uniformly adjust a color's intensity without creating a Color.
+
+       @param r the red component [0, 255]
+       @param g the green component [0, 255]
+       @param b the blue component [0, 255]
+       @param s the scalar which will be clamped to [0, 1].
+       @return the scaled color as 0xAARRGGBB, same as scaleColor().getRGB()
+    */
+    static public int scaleRGB(int r, int g, int b, double s) {
+        s = Algo.clamp(s, 0, 1);
+        return 0xff000000
+            | ((int)(r * s) << 16)
+            | ((int)(g * s) << 8)
+            | (int)(b * s);
+    }
     /**
        Create a new ArrayList containing the given elements.
     */
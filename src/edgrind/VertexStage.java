@@ -0,0 +1,194 @@
+/*
+  VertexStage.java
+  S. Edward Dolan
+  Friday, December 22 2023
+*/
+
+package edgrind;
+
+import edgrind.geom.Mat4;
+import edgrind.geom.AABBox;
+import edgrind.geom.IndexedMesh;
+
+/**
+   Transform a mesh's unique vertices and normals for the Rasterizer.
+   <p>
+   The model, view, projection, and viewport matrices are composed once per
+   model with setMatrices(). transform() then runs every unique vertex of an
+   IndexedMesh through them exactly once, writing flat x, y, z arrays that
+   the triangles index into.
+   </p>
+   <p>
+   classify() and isBackFacing() test a whole model, mesh, or cluster of
+   triangles against the screen and the view direction before any of its
+   vertices are transformed. The view is assumed to be orthographic, as
+   SimView's is.
+   </p>
+*/
+class VertexStage {
+    /** Results of classify(). */
+    static final int OUTSIDE = 0, PARTIAL = 1, INSIDE = 2;
+    /** Modelview coordinates, 3 per vertex. */
+    double[] view = new double[0];
+    /** Screen coordinates, 3 per vertex. */
+    double[] screen = new double[0];
+    /** Normalized modelview normals, 3 per normal. */
+    double[] norms = new double[0];
+    // the affine parts of the composed matrices
+    private final double[] mv = new double[12];
+    private final double[] mvs = new double[12];
+    private final double[] nm = new double[9];
+    // scratch for setMatrices()
+    private final Mat4 mvsm = new Mat4(), itm = new Mat4();
+    /** Unit direction toward the viewer, in model coordinates. */
+    private final double[] eye = new double[3];
+    /**
+       The screen box found by the last classify(), min x, y, z then max x,
+       y, z.
+    */
+    final double[] extent = new double[6];
+    private int width, height;
+    /**
+       Set the size of the screen classify() tests against, in pixels.
+    */
+    void setViewport(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+    /**
+       Compose the matrices used by transform().
+       @param mvm the model's matrix times the modelview matrix
+       @param psm the projection matrix times the NDC to screen matrix
+    */
+    void setMatrices(Mat4 mvm, Mat4 psm) {
+        affine(mvm, mv);
+        affine(mvm.mulInto(psm, mvsm), mvs);
+        double[] a = Mat4.inverseTransposeInto(mvm, itm).a;
+        for (int r=0; r<3; ++r)
+            for (int c=0; c<3; ++c)
+                nm[r * 3 + c] = a[r * 4 + c];
+        // the modelview z axis seen from the model, flipped for a mirror
+        double x = nm[2], y = nm[5], z = nm[8];
+        double len = Math.sqrt(x * x + y * y + z * z);
+        double det = mv[0] * (mv[4] * mv[8] - mv[5] * mv[7])
+            - mv[1] * (mv[3] * mv[8] - mv[5] * mv[6])
+            + mv[2] * (mv[3] * mv[7] - mv[4] * mv[6]);
+        if (det < 0)
+            len = -len;
+        eye[0] = x / len;
+        eye[1] = y / len;
+        eye[2] = z / len;
+    }
+    /**
+       Find where a box, in model coordinates, falls on the screen.
+       <p>
+       The screen extent of the transformed box is found from the affine
+       matrix without transforming its 8 corners one at a time, it's left
+       in extent. Depth
+       isn't tested, the rasterizers don't clip to the near and far planes.
+       The screen is taken to be a pixel larger all around so nothing that
+       could round to an edge pixel is called OUTSIDE.
+       </p>
+       @param b min x, y, z then max x, y, z, starting at b[off]
+       @return OUTSIDE if nothing in the box can be seen, INSIDE if all of
+       it is on the screen, else PARTIAL
+    */
+    int classify(double[] b, int off) {
+        return classify(b[off], b[off + 1], b[off + 2],
+                        b[off + 3], b[off + 4], b[off + 5]);
+    }
+    int classify(AABBox b) {
+        if (!b.isValid())
+            return OUTSIDE;
+        return classify(b.minX(), b.minY(), b.minZ(),
+                        b.maxX(), b.maxY(), b.maxZ());
+    }
+    private int classify(double x0, double y0, double z0,
+                         double x1, double y1, double z1) {
+        double[] m = mvs, e = extent;
+        for (int c=0; c<3; ++c) {
+            e[c] = e[c + 3] = m[9 + c];
+            for (int r=0; r<3; ++r) {
+                double lo = r == 0 ? x0 : r == 1 ? y0 : z0;
+                double hi = r == 0 ? x1 : r == 1 ? y1 : z1;
+                double a = lo * m[r * 3 + c], b = hi * m[r * 3 + c];
+                e[c] += Math.min(a, b);
+                e[c + 3] += Math.max(a, b);
+            }
+        }
+        double sx0 = e[0], sy0 = e[1], sx1 = e[3], sy1 = e[4];
+        if (sx1 < -1 || sy1 < -1 || sx0 > width || sy0 > height)
+            return OUTSIDE;
+        if (sx0 >= 0 && sy0 >= 0 && sx1 <= width - 1 && sy1 <= height - 1)
+            return INSIDE;
+        return PARTIAL;
+    }
+    /**
+       Find if every triangle inside a normal cone faces away from the
+       viewer.
+       @param cones a cone's axis x, y, z and cutoff starting at
+       cones[off], see IndexedMesh.cones
+    */
+    boolean isBackFacing(double[] cones, int off) {
+        return cones[off] * eye[0] + cones[off + 1] * eye[1] +
+            cones[off + 2] * eye[2] < cones[off + 3];
+    }
+    /**
+       Copy the upper 4x3 of the matrix, row by row.
+    */
+    private static void affine(Mat4 m, double[] out) {
+        for (int r=0; r<4; ++r)
+            for (int c=0; c<3; ++c)
+                out[r * 3 + c] = m.a[r * 4 + c];
+    }
+    /**
+       Transform the mesh's vertices and, optionally, its normals.
+    */
+    void transform(IndexedMesh im, boolean normals) {
+        double[] v = im.verts;
+        if (view.length < v.length) {
+            view = new double[v.length];
+            screen = new double[v.length];
+        }
+        transform(v, mv, view);
+        transform(v, mvs, screen);
+        if (normals) {
+            double[] n = im.norms;
+            if (norms.length < n.length)
+                norms = new double[n.length];
+            double a = nm[0], b = nm[1], c = nm[2];
+            double d = nm[3], e = nm[4], f = nm[5];
+            double g = nm[6], h = nm[7], k = nm[8];
+            for (int i=0; i<n.length; i+=3) {
+                double x = n[i], y = n[i + 1], z = n[i + 2];
+                double nx = x * a + y * d + z * g;
+                double ny = x * b + y * e + z * h;
+                double nz = x * c + y * f + z * k;
+                double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (len != 0) {
+                    nx /= len;
+                    ny /= len;
+                    nz /= len;
+                }
+                norms[i] = nx;
+                norms[i + 1] = ny;
+                norms[i + 2] = nz;
+            }
+        }
+    }
+    /**
+       Transform the points (row vectors, w = 1) by the affine matrix m.
+    */
+    private static void transform(double[] in, double[] m, double[] out) {
+        double a = m[0], b = m[1], c = m[2];
+        double d = m[3], e = m[4], f = m[5];
+        double g = m[6], h = m[7], k = m[8];
+        double tx = m[9], ty = m[10], tz = m[11];
+        for (int i=0; i<in.length; i+=3) {
+            double x = in[i], y = in[i + 1], z = in[i + 2];
+            out[i] = x * a + y * d + z * g + tx;
+            out[i + 1] = x * b + y * e + z * h + ty;
+            out[i + 2] = x * c + y * f + z * k + tz;
+        }
+    }
+}
@@ -99,6 +99,27 @@ public class AABBox {
         add(b.minP());
         add(b.maxP());
     }
+    /**
+       Get the box around this box transformed by a matrix.
+       <p>
+       The box is found from the 8 corners transformed, it holds whatever
+       this box holds but may be larger than the transformed contents.
+       </p>
+       @return a new box, invalid if this one is
+    */
+    public AABBox transform(Mat4 m) {
+        AABBox b = new AABBox();
+        if (!isValid())
+            return b;
+        Vec3 v = new Vec3();
+        for (int i=0; i<8; ++i) {
+            v.set((i & 1) == 0 ? minP.x : maxP.x,
+                  (i & 2) == 0 ? minP.y : maxP.y,
+                  (i & 4) == 0 ? minP.z : maxP.z);
+            b.add(m.mulInto(v, v));
+        }
+        return b;
+    }
     /** Create a new box from a list of vertices. */
     public static AABBox fromVertices(List<Vec3> verts) {
         AABBox b = new AABBox();
@@ -89,9 +89,9 @@ public class Algo {
        the plane.</p>
        
        @param pp a point on the plane
-       @param pn the plane normal
+       @param pn the plane normal, normalized in place
        @param rp the ray origin
-       @param rn the ray direction
+       @param rn the ray direction, normalized in place
        @param out the intersection point
        @return true if the ray intersects the plane
     */
@@ -102,9 +102,10 @@ public class Algo {
         rn = rn.norm();
         double d = pn.dot(rn);
         if (d != 0) {
-            Vec3 pprp = Vec3.sub(pp, rp);
-            double t = pprp.dot(pn) / d;
-            out.set(Vec3.add(rp, Vec3.mul(rn, t)));
+            // no temporaries, this is called for every pixel shaded
+            double t = ((pp.x - rp.x) * pn.x + (pp.y - rp.y) * pn.y +
+                        (pp.z - rp.z) * pn.z) / d;
+            out.set(rp.x + rn.x * t, rp.y + rn.y * t, rp.z + rn.z * t);
             return t >= 0;
         }
         return false;
@@ -0,0 +1,259 @@
+/*
+  BVH.java
+  S. Edward Dolan
+  Saturday, December 30 2023
+*/
+
+package edgrind.geom;
+
+import java.util.Arrays;
+
+/**
+   A bounding volume hierarchy over the triangles of an IndexedMesh.
+   <p>
+   Each node holds a box around its triangles. A leaf holds at most
+   LEAF_SIZE triangles, an inner node splits its triangles in two at the
+   middle of the longest axis of their centroids. A ray only visits the
+   nodes whose box it enters, nearest child first, so finding what it hits
+   first takes about log n box tests instead of a test of every triangle.
+   </p>
+   <p>
+   The nodes are stored in flat arrays. The children of an inner node are
+   next to each other, the first at first[node]. A leaf's triangles are
+   tris[first[node]] up to tris[first[node] + count[node]].
+   </p>
+*/
+public class BVH {
+    /** Most triangles in a leaf. */
+    public static final int LEAF_SIZE = 4;
+    /**
+       Where a ray hits a mesh.
+    */
+    public static class Hit {
+        /** The ray parameter, the point is origin + t * direction. */
+        public double t;
+        /** The triangle's index in the IndexedMesh. */
+        public int tri;
+        /** The mesh that was hit, set by Model.pick(). */
+        public Mesh mesh;
+    }
+    private final IndexedMesh im;
+    /** Node boxes, min x, y, z then max x, y, z. */
+    private final double[] bounds;
+    /** First child of an inner node, first index into tris of a leaf. */
+    private final int[] first;
+    /** Number of triangles of a leaf, 0 for an inner node. */
+    private final int[] count;
+    /** Triangle indices, ordered so each leaf's are contiguous. */
+    private final int[] tris;
+    /** Triangle centroids, 3 per triangle, only used while building. */
+    private double[] centroids;
+    private int nNodes;
+    /**
+       Build the hierarchy of the mesh's triangles.
+    */
+    public BVH(IndexedMesh im) {
+        this.im = im;
+        int n = im.nTris();
+        int maxNodes = Math.max(1, 2 * n - 1);
+        bounds = new double[maxNodes * 6];
+        first = new int[maxNodes];
+        count = new int[maxNodes];
+        tris = new int[n];
+        centroids = new double[n * 3];
+        double[] v = im.verts;
+        for (int t=0; t<n; ++t) {
+            tris[t] = t;
+            for (int c=0; c<3; ++c)
+                centroids[t * 3 + c] = (v[im.vidxs[t * 3] * 3 + c] +
+                                        v[im.vidxs[t * 3 + 1] * 3 + c] +
+                                        v[im.vidxs[t * 3 + 2] * 3 + c]) / 3;
+        }
+        nNodes = 1;
+        build(0, 0, n);
+        centroids = null;
+    }
+    /**
+       Make the node from the triangles tris[start] up to tris[end].
+    */
+    private void build(int node, int start, int end) {
+        double[] v = im.verts;
+        int b = node * 6;
+        for (int c=0; c<3; ++c) {
+            bounds[b + c] = Double.POSITIVE_INFINITY;
+            bounds[b + 3 + c] = Double.NEGATIVE_INFINITY;
+        }
+        double[] cmin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                         Double.POSITIVE_INFINITY};
+        double[] cmax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                         Double.NEGATIVE_INFINITY};
+        for (int i=start; i<end; ++i) {
+            int t = tris[i];
+            for (int k=0; k<3; ++k)
+                for (int c=0; c<3; ++c) {
+                    double x = v[im.vidxs[t * 3 + k] * 3 + c];
+                    bounds[b + c] = Math.min(bounds[b + c], x);
+                    bounds[b + 3 + c] = Math.max(bounds[b + 3 + c], x);
+                }
+            for (int c=0; c<3; ++c) {
+                cmin[c] = Math.min(cmin[c], centroids[t * 3 + c]);
+                cmax[c] = Math.max(cmax[c], centroids[t * 3 + c]);
+            }
+        }
+        if (end - start <= LEAF_SIZE) {
+            first[node] = start;
+            count[node] = end - start;
+            return;
+        }
+        int axis = 0;
+        for (int c=1; c<3; ++c)
+            if (cmax[c] - cmin[c] > cmax[axis] - cmin[axis])
+                axis = c;
+        // partition about the middle of the centroids
+        double mid = (cmin[axis] + cmax[axis]) * .5;
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (centroids[tris[i] * 3 + axis] < mid)
+                ++i;
+            else {
+                int tmp = tris[i];
+                tris[i] = tris[j];
+                tris[j--] = tmp;
+            }
+        }
+        if (i == start || i == end)
+            // every centroid in one place, just halve them
+            i = (start + end) / 2;
+        int left = nNodes;
+        nNodes += 2;
+        first[node] = left;
+        count[node] = 0;
+        build(left, start, i);
+        build(left + 1, i, end);
+    }
+    /**
+       Find the nearest triangle the ray hits.
+       <p>
+       Both sides of a triangle are hit.
+       </p>
+       @param p the ray's origin
+       @param d the ray's direction, it needn't be unit length
+       @param tMax only hits nearer than this are found
+       @return the hit, or null if there's none
+    */
+    public Hit intersect(Vec3 p, Vec3 d, double tMax) {
+        if (tris.length == 0)
+            return null;
+        double ix = 1 / d.x, iy = 1 / d.y, iz = 1 / d.z;
+        Hit hit = null;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (enter(node, p, ix, iy, iz, tMax) > tMax)
+                continue;
+            if (count[node] > 0) {
+                for (int i=first[node], e=i + count[node]; i<e; ++i) {
+                    double t = intersect(tris[i], p, d);
+                    if (t < tMax) {
+                        tMax = t;
+                        if (hit == null)
+                            hit = new Hit();
+                        hit.t = t;
+                        hit.tri = tris[i];
+                    }
+                }
+                continue;
+            }
+            int a = first[node], b = a + 1;
+            double ta = enter(a, p, ix, iy, iz, tMax);
+            double tb = enter(b, p, ix, iy, iz, tMax);
+            if (ta > tb) {
+                int tmp = a;
+                a = b;
+                b = tmp;
+            }
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            // the nearer child is popped first
+            if (Math.max(ta, tb) <= tMax)
+                stack[top++] = b;
+            if (Math.min(ta, tb) <= tMax)
+                stack[top++] = a;
+        }
+        return hit;
+    }
+    /**
+       Find where the ray enters the node's box.
+       @return the ray parameter, never less than 0, or infinity if the ray
+       misses the box or enters it beyond tMax
+    */
+    private double enter(int node, Vec3 p, double ix, double iy, double iz,
+                         double tMax) {
+        int b = node * 6;
+        double t0 = 0, t1 = tMax;
+        double a = (bounds[b] - p.x) * ix, c = (bounds[b + 3] - p.x) * ix;
+        t0 = Math.max(t0, Math.min(a, c));
+        t1 = Math.min(t1, Math.max(a, c));
+        a = (bounds[b + 1] - p.y) * iy;
+        c = (bounds[b + 4] - p.y) * iy;
+        t0 = Math.max(t0, Math.min(a, c));
+        t1 = Math.min(t1, Math.max(a, c));
+        a = (bounds[b + 2] - p.z) * iz;
+        c = (bounds[b + 5] - p.z) * iz;
+        t0 = Math.max(t0, Math.min(a, c));
+        t1 = Math.min(t1, Math.max(a, c));
+        // NaN from 0 * infinity (a ray in a box's face) counts as a hit,
+        // entering at the origin so the caller's comparisons still hold
+        if (Double.isNaN(t0) || Double.isNaN(t1))
+            return 0;
+        return t0 <= t1 ? t0 : Double.POSITIVE_INFINITY;
+    }
+    /**
+       Intersect the ray with a triangle, Moller-Trumbore.
+       @return the ray parameter, or infinity if it misses or is behind the
+       origin
+    */
+    private double intersect(int tri, Vec3 p, Vec3 d) {
+        double[] v = im.verts;
+        int i1 = im.vidxs[tri * 3] * 3;
+        int i2 = im.vidxs[tri * 3 + 1] * 3;
+        int i3 = im.vidxs[tri * 3 + 2] * 3;
+        double e1x = v[i2] - v[i1], e1y = v[i2 + 1] - v[i1 + 1];
+        double e1z = v[i2 + 2] - v[i1 + 2];
+        double e2x = v[i3] - v[i1], e2y = v[i3 + 1] - v[i1 + 1];
+        double e2z = v[i3 + 2] - v[i1 + 2];
+        double px = d.y * e2z - d.z * e2y;
+        double py = d.z * e2x - d.x * e2z;
+        double pz = d.x * e2y - d.y * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (det == 0)
+            return Double.POSITIVE_INFINITY;
+        double inv = 1 / det;
+        double sx = p.x - v[i1], sy = p.y - v[i1 + 1], sz = p.z - v[i1 + 2];
+        double u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1)
+            return Double.POSITIVE_INFINITY;
+        double qx = sy * e1z - sz * e1y;
+        double qy = sz * e1x - sx * e1z;
+        double qz = sx * e1y - sy * e1x;
+        double w = (d.x * qx + d.y * qy + d.z * qz) * inv;
+        if (w < 0 || u + w > 1)
+            return Double.POSITIVE_INFINITY;
+        double t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return t >= 0 ? t : Double.POSITIVE_INFINITY;
+    }
+    /** Get the number of nodes. */
+    public int nNodes() {
+        return nNodes;
+    }
+    /**
+       Get about how many bytes the node and triangle arrays take, the
+       IndexedMesh isn't counted.
+    */
+    public long memorySize() {
+        return 8L * bounds.length +
+            4L * (first.length + count.length + tris.length);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+  ConvexHull.java
+  S. Edward Dolan
+  Sunday, January 7 2024
+*/
+
+package edgrind.geom;
+
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+//
+import edgrind.error.IllegalStateError;
+
+/**
+   Find the vertices of the convex hull of a set of points, by quickhull.
+   <p>
+   A linear function of the points, like a coordinate after a transform,
+   is largest and smallest at hull vertices, so the box around a mesh
+   under any matrix can be found from its hull's vertices alone. See
+   Mesh.getBBox(m, exact).
+   </p>
+   <p>
+   Points within a tolerance of a face are taken to be inside it, the
+   tolerance is about the rounding error of the plane equations. If the
+   points are all on a plane or a line, or rounding leaves the faces in a
+   state that isn't a closed hull, every point is returned. The result is
+   only ever too many points, never too few.
+   </p>
+*/
+class ConvexHull {
+    /** A hull triangle, counterclockwise seen from outside. */
+    private static class Face {
+        final int a, b, c;
+        final double nx, ny, nz, d;
+        /** The points above this face that aren't yet on the hull. */
+        int[] outside = new int[4];
+        int nOutside;
+        boolean dead;
+        Face(double[] p, int a, int b, int c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            double ux = p[b * 3] - p[a * 3], uy = p[b * 3 + 1] - p[a * 3 + 1];
+            double uz = p[b * 3 + 2] - p[a * 3 + 2];
+            double vx = p[c * 3] - p[a * 3], vy = p[c * 3 + 1] - p[a * 3 + 1];
+            double vz = p[c * 3 + 2] - p[a * 3 + 2];
+            double x = uy * vz - uz * vy, y = uz * vx - ux * vz;
+            double z = ux * vy - uy * vx;
+            double len = Math.sqrt(x * x + y * y + z * z);
+            nx = x / len;
+            ny = y / len;
+            nz = z / len;
+            d = nx * p[a * 3] + ny * p[a * 3 + 1] + nz * p[a * 3 + 2];
+        }
+        double distance(double[] p, int i) {
+            return nx * p[i * 3] + ny * p[i * 3 + 1] + nz * p[i * 3 + 2] - d;
+        }
+        void addOutside(int i) {
+            if (nOutside == outside.length)
+                outside = Arrays.copyOf(outside, nOutside * 2);
+            outside[nOutside++] = i;
+        }
+    }
+    private final double[] p;
+    private final int n;
+    private final double tol;
+    private final List<Face> faces = new ArrayList<Face>();
+    /** Directed edge, see key(), to the face it's an edge of. */
+    private final Map<Long, Face> edges = new HashMap<Long, Face>();
+    private ConvexHull(double[] p) {
+        this.p = p;
+        n = p.length / 3;
+        double mx = 0, my = 0, mz = 0;
+        for (int i=0; i<n; ++i) {
+            mx = Math.max(mx, Math.abs(p[i * 3]));
+            my = Math.max(my, Math.abs(p[i * 3 + 1]));
+            mz = Math.max(mz, Math.abs(p[i * 3 + 2]));
+        }
+        tol = 3 * Math.ulp(1.0) * (mx + my + mz);
+    }
+    /**
+       Find the convex hull's vertices.
+       @param p x, y, z for each point
+       @return the indices of the hull's vertices, p[i * 3] is the x of
+       vertex i
+    */
+    static int[] vertices(double[] p) {
+        ConvexHull hull = new ConvexHull(p);
+        try {
+            if (hull.build())
+                return hull.used();
+        }
+        catch (IllegalStateError e) {
+        }
+        int[] all = new int[hull.n];
+        for (int i=0; i<all.length; ++i)
+            all[i] = i;
+        return all;
+    }
+    /**
+       Build the faces.
+       @return false if the points are degenerate
+    */
+    private boolean build() {
+        if (n < 4)
+            return false;
+        // the farthest apart of the extreme points on each axis
+        int i0 = 0, i1 = 0;
+        double best = -1;
+        for (int axis=0; axis<3; ++axis) {
+            int lo = 0, hi = 0;
+            for (int i=1; i<n; ++i) {
+                if (p[i * 3 + axis] < p[lo * 3 + axis])
+                    lo = i;
+                if (p[i * 3 + axis] > p[hi * 3 + axis])
+                    hi = i;
+            }
+            double d = p[hi * 3 + axis] - p[lo * 3 + axis];
+            if (d > best) {
+                best = d;
+                i0 = lo;
+                i1 = hi;
+            }
+        }
+        if (best <= tol)
+            return false;
+        // the farthest from their line
+        int i2 = -1;
+        best = tol;
+        double ux = p[i1 * 3] - p[i0 * 3], uy = p[i1 * 3 + 1] - p[i0 * 3 + 1];
+        double uz = p[i1 * 3 + 2] - p[i0 * 3 + 2];
+        double ul = Math.sqrt(ux * ux + uy * uy + uz * uz);
+        for (int i=0; i<n; ++i) {
+            double vx = p[i * 3] - p[i0 * 3];
+            double vy = p[i * 3 + 1] - p[i0 * 3 + 1];
+            double vz = p[i * 3 + 2] - p[i0 * 3 + 2];
+            double x = uy * vz - uz * vy, y = uz * vx - ux * vz;
+            double z = ux * vy - uy * vx;
+            double d = Math.sqrt(x * x + y * y + z * z) / ul;
+            if (d > best) {
+                best = d;
+                i2 = i;
+            }
+        }
+        if (i2 == -1)
+            return false;
+        // the farthest from their plane
+        Face base = new Face(p, i0, i1, i2);
+        int i3 = -1;
+        best = tol;
+        for (int i=0; i<n; ++i) {
+            double d = Math.abs(base.distance(p, i));
+            if (d > best) {
+                best = d;
+                i3 = i;
+            }
+        }
+        if (i3 == -1)
+            return false;
+        if (base.distance(p, i3) > 0) {
+            add(new Face(p, i0, i2, i1));
+            add(new Face(p, i0, i1, i3));
+            add(new Face(p, i1, i2, i3));
+            add(new Face(p, i2, i0, i3));
+        }
+        else {
+            add(new Face(p, i0, i1, i2));
+            add(new Face(p, i1, i0, i3));
+            add(new Face(p, i2, i1, i3));
+            add(new Face(p, i0, i2, i3));
+        }
+        List<Face> initial = new ArrayList<Face>(faces);
+        for (int i=0; i<n; ++i)
+            if (i != i0 && i != i1 && i != i2 && i != i3)
+                assign(i, initial);
+        for (int f=0; f<faces.size(); ++f) {
+            Face face = faces.get(f);
+            if (!face.dead && face.nOutside > 0)
+                addPoint(face);
+        }
+        return true;
+    }
+    /**
+       Add a face's farthest outside point to the hull.
+    */
+    private void addPoint(Face face) {
+        int eye = face.outside[0];
+        double far = face.distance(p, eye);
+        for (int k=1; k<face.nOutside; ++k) {
+            double d = face.distance(p, face.outside[k]);
+            if (d > far) {
+                far = d;
+                eye = face.outside[k];
+            }
+        }
+        // the faces the eye sees and the edges around them
+        List<Face> visible = new ArrayList<Face>();
+        List<int[]> horizon = new ArrayList<int[]>();
+        face.dead = true;
+        visible.add(face);
+        for (int v=0; v<visible.size(); ++v) {
+            Face f = visible.get(v);
+            int[] vs = {f.a, f.b, f.c};
+            for (int e=0; e<3; ++e) {
+                int u = vs[e], w = vs[(e + 1) % 3];
+                Face g = edges.get(key(w, u));
+                if (g == null)
+                    throw new IllegalStateError("open hull");
+                if (g.dead)
+                    continue;
+                if (g.distance(p, eye) > tol) {
+                    g.dead = true;
+                    visible.add(g);
+                }
+                else
+                    horizon.add(new int[] {u, w});
+            }
+        }
+        for (Face f : visible) {
+            edges.remove(key(f.a, f.b));
+            edges.remove(key(f.b, f.c));
+            edges.remove(key(f.c, f.a));
+        }
+        List<Face> cone = new ArrayList<Face>();
+        for (int[] e : horizon)
+            cone.add(add(new Face(p, e[0], e[1], eye)));
+        for (Face f : visible)
+            for (int k=0; k<f.nOutside; ++k)
+                if (f.outside[k] != eye)
+                    assign(f.outside[k], cone);
+    }
+    /**
+       Give a point to the first face it's above, drop it if it's above
+       none.
+    */
+    private void assign(int i, List<Face> fs) {
+        for (Face f : fs)
+            if (f.distance(p, i) > tol) {
+                f.addOutside(i);
+                return;
+            }
+    }
+    private Face add(Face f) {
+        if (edges.put(key(f.a, f.b), f) != null ||
+            edges.put(key(f.b, f.c), f) != null ||
+            edges.put(key(f.c, f.a), f) != null)
+            throw new IllegalStateError("edge on two faces");
+        faces.add(f);
+        return f;
+    }
+    private long key(int u, int v) {
+        return (long)u * n + v;
+    }
+    /**
+       Get the vertices of the live faces, each once.
+    */
+    private int[] used() {
+        boolean[] on = new boolean[n];
+        int count = 0;
+        for (Face f : faces) {
+            if (f.dead)
+                continue;
+            for (int i : new int[] {f.a, f.b, f.c})
+                if (!on[i]) {
+                    on[i] = true;
+                    ++count;
+                }
+        }
+        int[] out = new int[count];
+        for (int i=0, j=0; i<n; ++i)
+            if (on[i])
+                out[j++] = i;
+        return out;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+  EdgeTable.java
+  S. Edward Dolan
+  Tuesday, December 26 2023
+*/
+
+package edgrind.geom;
+
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+   The unique edges of an IndexedMesh.
+   <p>
+   Each edge is stored once no matter how many triangles share it, along with
+   the (up to) two triangles on either side of it. An edge whose triangles
+   meet at more than CREASE_ANGLE degrees, or that has only one triangle, is
+   flagged as a feature edge. Whether an edge is on the silhouette depends on
+   the view, see isSilhouette().
+   </p>
+*/
+public class EdgeTable {
+    /** Edges whose faces meet at a greater angle are creases. */
+    public static final double CREASE_ANGLE = 40;
+    /** Flag, the edge has a single face. */
+    public static final int BOUNDARY = 1;
+    /** Flag, the edge's faces meet at more than CREASE_ANGLE. */
+    public static final int CREASE = 2;
+    /** Vertex indices into IndexedMesh.verts, two per edge. */
+    public final int[] verts;
+    /** Triangle indices, two per edge. The second is -1 on a boundary. */
+    public final int[] faces;
+    /** BOUNDARY and/or CREASE, one per edge. */
+    public final byte[] flags;
+    /**
+       Build the edge table of the mesh.
+       <p>
+       Triangles with no area are ignored.
+       </p>
+    */
+    public EdgeTable(IndexedMesh im) {
+        double cosCrease = Math.cos(Math.toRadians(CREASE_ANGLE));
+        int[] vidxs = im.vidxs;
+        int nTris = im.nTris();
+        double[] fn = faceNormals(im);
+        Map<Long, Integer> map = new HashMap<Long, Integer>(nTris * 2);
+        int[] ev = new int[nTris * 6];
+        int[] ef = new int[nTris * 6];
+        byte[] fl = new byte[nTris * 3];
+        int n = 0;
+        for (int t=0; t<nTris; ++t) {
+            if (fn[t * 3] == 0 && fn[t * 3 + 1] == 0 && fn[t * 3 + 2] == 0)
+                continue;
+            for (int k=0; k<3; ++k) {
+                int a = vidxs[t * 3 + k], b = vidxs[t * 3 + (k + 1) % 3];
+                if (a == b)
+                    continue;
+                long key = a < b
+                    ? ((long)a << 32) | b
+                    : ((long)b << 32) | a;
+                Integer e = map.get(key);
+                if (e == null) {
+                    map.put(key, n);
+                    ev[n * 2] = Math.min(a, b);
+                    ev[n * 2 + 1] = Math.max(a, b);
+                    ef[n * 2] = t;
+                    ef[n * 2 + 1] = -1;
+                    ++n;
+                }
+                else if (ef[e * 2 + 1] == -1) {
+                    ef[e * 2 + 1] = t;
+                    if (dot(fn, ef[e * 2], t) < cosCrease)
+                        fl[e] |= CREASE;
+                }
+                else if (dot(fn, ef[e * 2], t) < cosCrease &&
+                         dot(fn, ef[e * 2 + 1], t) < cosCrease)
+                    // non-manifold, a third face going somewhere else
+                    fl[e] |= CREASE;
+            }
+        }
+        verts = new int[n * 2];
+        faces = new int[n * 2];
+        flags = new byte[n];
+        System.arraycopy(ev, 0, verts, 0, n * 2);
+        System.arraycopy(ef, 0, faces, 0, n * 2);
+        for (int e=0; e<n; ++e) {
+            flags[e] = fl[e];
+            if (faces[e * 2 + 1] == -1)
+                flags[e] |= BOUNDARY;
+        }
+    }
+    /**
+       Find the unit normal of each triangle, 0,0,0 if it has no area.
+    */
+    private static double[] faceNormals(IndexedMesh im) {
+        double[] v = im.verts;
+        int[] vidxs = im.vidxs;
+        double[] fn = new double[vidxs.length];
+        for (int i=0; i<vidxs.length; i+=3) {
+            int i1 = vidxs[i] * 3, i2 = vidxs[i + 1] * 3, i3 = vidxs[i + 2] * 3;
+            double ax = v[i2] - v[i1], ay = v[i2 + 1] - v[i1 + 1];
+            double az = v[i2 + 2] - v[i1 + 2];
+            double bx = v[i3] - v[i1], by = v[i3 + 1] - v[i1 + 1];
+            double bz = v[i3 + 2] - v[i1 + 2];
+            double x = ay * bz - az * by;
+            double y = az * bx - ax * bz;
+            double z = ax * by - ay * bx;
+            double m = Math.sqrt(x * x + y * y + z * z);
+            if (m > 0) {
+                fn[i] = x / m;
+                fn[i + 1] = y / m;
+                fn[i + 2] = z / m;
+            }
+        }
+        return fn;
+    }
+    private static double dot(double[] fn, int t1, int t2) {
+        return fn[t1 * 3] * fn[t2 * 3]
+            + fn[t1 * 3 + 1] * fn[t2 * 3 + 1]
+            + fn[t1 * 3 + 2] * fn[t2 * 3 + 2];
+    }
+    /** Get the number of edges. */
+    public int size() {
+        return flags.length;
+    }
+    /** Get about how many bytes the edge arrays take. */
+    public long memorySize() {
+        return 4L * (verts.length + faces.length) + flags.length;
+    }
+    /**
+       Find if the edge is on the silhouette.
+       @param e the edge index
+       @param front per triangle, true if it faces the viewer
+       @return true if one of the edge's faces is front facing and the other
+       is back facing or missing
+    */
+    public boolean isSilhouette(int e, boolean[] front) {
+        int f2 = faces[e * 2 + 1];
+        boolean front1 = front[faces[e * 2]];
+        return f2 == -1 ? front1 : front1 != front[f2];
+    }
+    /**
+       Find if the edge should be drawn in a wireframe.
+       @return true if either of the edge's faces is front facing
+    */
+    public boolean isVisible(int e, boolean[] front) {
+        int f2 = faces[e * 2 + 1];
+        return front[faces[e * 2]] || (f2 != -1 && front[f2]);
+    }
+}
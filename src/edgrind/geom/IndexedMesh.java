@@ -0,0 +1,161 @@
+/*
+  IndexedMesh.java
+  S. Edward Dolan
+  Friday, December 22 2023
+*/
+
+package edgrind.geom;
+
+/**
+   An indexed, primitive array view of a Mesh's triangles.
+   <p>
+   Each of the mesh's welded vertices and normals (see MeshBuilder) is
+   stored once, as three doubles, and each triangle refers to them by index.
+   A vertex shared by six triangles is transformed once instead of six
+   times.
+   </p>
+   <p>
+   Consecutive runs of CLUSTER_SIZE triangles are grouped into clusters.
+   Each has a bounding box and a cone that holds the normals of its
+   triangles, so the Rasterizer can skip a cluster that's off screen or that
+   faces entirely away from the viewer without looking at its triangles. A
+   revolved surface's triangles are made around the axis in order, so a
+   cluster is a small patch of the surface.
+   </p>
+*/
+public class IndexedMesh {
+    /** Triangles per cluster, the last may have fewer. */
+    public static final int CLUSTER_SIZE = 16;
+    /** Vertex coordinates, x, y, z for each unique vertex. */
+    public final double[] verts;
+    /** Normal components, x, y, z for each unique normal. */
+    public final double[] norms;
+    /** Indices into verts, three per triangle. */
+    public final int[] vidxs;
+    /** Indices into norms, three per triangle. */
+    public final int[] nidxs;
+    /** Box around the vertices, min x, y, z then max x, y, z. */
+    public final double[] bounds = new double[6];
+    /** Box around each cluster's vertices, 6 per cluster as in bounds. */
+    public final double[] clusterBounds;
+    /**
+       Normal cone of each cluster, 4 per cluster: the cone's unit axis x,
+       y, z then minus the sine of its half angle. Every triangle in the
+       cluster faces away from a unit direction d if axis . d is less than
+       that. It's -2 if the cone is too wide to ever pass the test.
+    */
+    public final double[] cones;
+    /**
+       Build the indexed view of the triangles.
+       <p>
+       The arrays are Mesh's, they're shared, not copied.
+       </p>
+    */
+    public IndexedMesh(double[] verts, double[] norms, int[] vidxs,
+                       int[] nidxs) {
+        this.verts = verts;
+        this.norms = norms;
+        this.vidxs = vidxs;
+        this.nidxs = nidxs;
+        int nTris = vidxs.length / 3;
+        int nClusters = (nTris + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        clusterBounds = new double[nClusters * 6];
+        cones = new double[nClusters * 4];
+        box(0, vidxs.length, bounds, 0);
+        for (int c=0; c<nClusters; ++c) {
+            int k0 = c * CLUSTER_SIZE * 3;
+            int k1 = Math.min(vidxs.length, k0 + CLUSTER_SIZE * 3);
+            box(k0, k1, clusterBounds, c * 6);
+            cone(k0, k1, cones, c * 4);
+        }
+    }
+    /**
+       Find the box around the vertices indexed by vidxs[k0] up to
+       vidxs[k1].
+    */
+    private void box(int k0, int k1, double[] out, int off) {
+        for (int i=0; i<3; ++i) {
+            out[off + i] = Double.POSITIVE_INFINITY;
+            out[off + 3 + i] = Double.NEGATIVE_INFINITY;
+        }
+        for (int k=k0; k<k1; ++k)
+            for (int i=0, v=vidxs[k] * 3; i<3; ++i) {
+                out[off + i] = Math.min(out[off + i], verts[v + i]);
+                out[off + 3 + i] = Math.max(out[off + 3 + i], verts[v + i]);
+            }
+    }
+    /**
+       Find the cone around the face normals of the triangles indexed by
+       vidxs[k0] up to vidxs[k1].
+       <p>
+       The face normals follow the winding, as the Rasterizer's back face
+       test does. The vertex normals aren't used.
+       </p>
+    */
+    private void cone(int k0, int k1, double[] out, int off) {
+        double[] fn = new double[k1 - k0];
+        double ax = 0, ay = 0, az = 0;
+        for (int k=k0; k<k1; k+=3) {
+            int i1 = vidxs[k] * 3;
+            int i2 = vidxs[k + 1] * 3;
+            int i3 = vidxs[k + 2] * 3;
+            double ux = verts[i2] - verts[i1];
+            double uy = verts[i2 + 1] - verts[i1 + 1];
+            double uz = verts[i2 + 2] - verts[i1 + 2];
+            double vx = verts[i3] - verts[i1];
+            double vy = verts[i3 + 1] - verts[i1 + 1];
+            double vz = verts[i3 + 2] - verts[i1 + 2];
+            double x = uy * vz - uz * vy;
+            double y = uz * vx - ux * vz;
+            double z = ux * vy - uy * vx;
+            double m = Math.sqrt(x * x + y * y + z * z);
+            if (m == 0)
+                continue;       // no area, it never covers a pixel
+            int j = k - k0;
+            ax += fn[j] = x / m;
+            ay += fn[j + 1] = y / m;
+            az += fn[j + 2] = z / m;
+        }
+        out[off + 3] = -2;
+        double m = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (m < 1e-9)
+            return;
+        ax /= m;
+        ay /= m;
+        az /= m;
+        double cosMin = 1;
+        for (int j=0; j<fn.length; j+=3)
+            if (fn[j] != 0 || fn[j + 1] != 0 || fn[j + 2] != 0)
+                cosMin = Math.min(cosMin, ax * fn[j] + ay * fn[j + 1] +
+                                  az * fn[j + 2]);
+        out[off] = ax;
+        out[off + 1] = ay;
+        out[off + 2] = az;
+        if (cosMin > 1e-6)
+            // a hair wider for round off
+            out[off + 3] = -Math.sqrt(1 - cosMin * cosMin) - 1e-6;
+    }
+    /** Get the number of unique vertices. */
+    public int nVerts() {
+        return verts.length / 3;
+    }
+    /** Get the number of unique normals. */
+    public int nNorms() {
+        return norms.length / 3;
+    }
+    /** Get the number of triangles. */
+    public int nTris() {
+        return vidxs.length / 3;
+    }
+    /** Get the number of clusters. */
+    public int nClusters() {
+        return cones.length / 4;
+    }
+    /**
+       Get about how many bytes the arrays this view built take, the
+       shared arrays of its Mesh aren't counted.
+    */
+    public long memorySize() {
+        return 8L * (bounds.length + clusterBounds.length + cones.length);
+    }
+}
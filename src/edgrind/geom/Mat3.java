@@ -29,9 +29,9 @@ public class Mat3 {
     public Mat3(Mat4 m) {
         a = new double[] {
             // TODO: row/col order correct?
-            m.a[0][0], m.a[1][0], m.a[2][0],
-            m.a[0][1], m.a[1][1], m.a[2][1],
-            m.a[0][2], m.a[1][2], m.a[2][2],
+            m.a[0], m.a[4], m.a[8],
+            m.a[1], m.a[5], m.a[9],
+            m.a[2], m.a[6], m.a[10],
         };
     }
     public String toString() {
@@ -10,73 +10,121 @@ import java.util.Stack;
 // 
 import edgrind.error.ZeroError;
 
+/**
+   A 4x4 matrix, row-major in a flat array.
+   <p>
+   Vectors are rows, transformed by p * M, so a translation is in the last
+   row. Most matrices here are affine, their last column is 0, 0, 0, 1.
+   mulInto(), inverse() and inverseTranspose() test for that and skip the
+   terms it makes zero. The terms they skip are exact zeros, so the results
+   are the same as the general path's.
+   </p>
+*/
 public class Mat4 {
     /** Single matrix stack per process */
     static Stack<Mat4> stack = new Stack<Mat4>();
     static {
         stack.push(new Mat4());
     }
-    public double a[][];             // rows/cols
+    /** The 16 matrix components, a[r * 4 + c] */
+    public final double[] a;
     /**
        Construct a 4x4 identity matrix.
     */
     public Mat4() {
-        a = new double[][] {
-            {1, 0, 0, 0},
-            {0, 1, 0, 0},
-            {0, 0, 1, 0},
-            {0, 0, 0, 1}
+        a = new double[] {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
         };
     }
-    public Mat4(double a[][]) {
+    /** Construct from the given 16 components, not copied. */
+    public Mat4(double[] a) {
         this.a = a;
     }
     public Mat4(Mat4 m) {
-        a = new double[4][4];
-        for (int i=0; i<4; ++i)
-            for (int j=0; j<4; ++j)
-                a[i][j] = m.a[i][j];
+        a = m.a.clone();
     }
     public String toString() {
         return String.format("Mat4 %+-15.8f %+-15.8f %+-15.8f %+-15.8f\n" +
                              "     %+-15.8f %+-15.8f %+-15.8f %+-15.8f\n" +
                              "     %+-15.8f %+-15.8f %+-15.8f %+-15.8f\n" +
                              "     %+-15.8f %+-15.8f %+-15.8f %+-15.8f",
-                             a[0][0], a[1][0], a[2][0], a[3][0],
-                             a[0][1], a[1][1], a[2][1], a[3][1],
-                             a[0][2], a[1][2], a[2][2], a[3][2],
-                             a[0][3], a[1][3], a[2][3], a[3][3]);
+                             a[0], a[4], a[8], a[12],
+                             a[1], a[5], a[9], a[13],
+                             a[2], a[6], a[10], a[14],
+                             a[3], a[7], a[11], a[15]);
+    }
+    /**
+       Find if the last column is 0, 0, 0, 1.
+    */
+    public boolean isAffine() {
+        return a[3] == 0 && a[7] == 0 && a[11] == 0 && a[15] == 1;
     }
     public Mat4 mul(Mat4 m) {
-        Mat4 out = new Mat4();
-        for (int i=0; i<4; ++i)
-            for (int j=0; j<4; ++j) {
-                double num = 0;
-                for (int k=0; k<4; ++k)
-                    num += a[i][k] * m.a[k][j];
-                out.a[i][j] = num;
+        return mulInto(m, new Mat4(new double[16]));
+    }
+    /**
+       Same as mul(m), the product written to out.
+       @param out the product, may be this but not m
+       @return out
+    */
+    public Mat4 mulInto(Mat4 m, Mat4 out) {
+        double[] b = m.a, o = out.a;
+        if (isAffine() && m.isAffine()) {
+            for (int i=0; i<12; i+=4) {
+                double r0 = a[i], r1 = a[i + 1], r2 = a[i + 2];
+                o[i] = 0 + r0 * b[0] + r1 * b[4] + r2 * b[8];
+                o[i + 1] = 0 + r0 * b[1] + r1 * b[5] + r2 * b[9];
+                o[i + 2] = 0 + r0 * b[2] + r1 * b[6] + r2 * b[10];
+                o[i + 3] = 0;
             }
+            double r0 = a[12], r1 = a[13], r2 = a[14];
+            o[12] = 0 + r0 * b[0] + r1 * b[4] + r2 * b[8] + b[12];
+            o[13] = 0 + r0 * b[1] + r1 * b[5] + r2 * b[9] + b[13];
+            o[14] = 0 + r0 * b[2] + r1 * b[6] + r2 * b[10] + b[14];
+            o[15] = 1;
+            return out;
+        }
+        for (int i=0; i<16; i+=4) {
+            double r0 = a[i], r1 = a[i + 1], r2 = a[i + 2], r3 = a[i + 3];
+            o[i] = 0 + r0 * b[0] + r1 * b[4] + r2 * b[8] + r3 * b[12];
+            o[i + 1] = 0 + r0 * b[1] + r1 * b[5] + r2 * b[9] + r3 * b[13];
+            o[i + 2] = 0 + r0 * b[2] + r1 * b[6] + r2 * b[10] + r3 * b[14];
+            o[i + 3] = 0 + r0 * b[3] + r1 * b[7] + r2 * b[11] + r3 * b[15];
+        }
         return out;
     }
     public Vec3 mul(Vec3 v, boolean normal) {
-        double[] res = new double[4];
-        double[] vv = new double[] {v.x, v.y, v.z, normal ? 0.0 : 1.0};
-        for (int r=0; r<4; ++r) {
-            double prod = 0;
-            for (int c=0; c<4; ++c)
-                prod += vv[c] * a[c][r];
-            res[r] = prod;
-        }
-        // System.out.println("w:" + res[3]);
-        return new Vec3(res[0], res[1], res[2]);
+        return mulInto(v, normal, new Vec3());
     }
     public Vec3 mul(Vec3 v) {
         return mul(v, false);
     }
+    /**
+       Same as mul(v, normal), the product written to out.
+       @param out the product, may be v
+       @return out
+    */
+    public Vec3 mulInto(Vec3 v, boolean normal, Vec3 out) {
+        double x = 0 + v.x * a[0] + v.y * a[4] + v.z * a[8];
+        double y = 0 + v.x * a[1] + v.y * a[5] + v.z * a[9];
+        double z = 0 + v.x * a[2] + v.y * a[6] + v.z * a[10];
+        if (!normal) {
+            x += a[12];
+            y += a[13];
+            z += a[14];
+        }
+        out.set(x, y, z);
+        return out;
+    }
+    public Vec3 mulInto(Vec3 v, Vec3 out) {
+        return mulInto(v, false, out);
+    }
     public Mat4 div(double s) {
-        for (int i=0; i<4; ++i)
-            for (int j=0; j<4; ++j)
-                a[i][j] /= s;
+        for (int i=0; i<16; ++i)
+            a[i] /= s;
         return this;
     }
     /**
@@ -90,10 +138,10 @@ public class Mat4 {
     //     return new Tri3(mul(t.v1), mul(t.v2), mul(t.v3), t.n1, t.n2, t.n3);
     // }
     public Vec4 row(int i) {
-        return new Vec4(a[i][0], a[i][1], a[i][2], a[i][3]);
+        return new Vec4(a[i * 4], a[i * 4 + 1], a[i * 4 + 2], a[i * 4 + 3]);
     }
     public Vec4 col(int i) {
-        return new Vec4(a[0][i], a[1][i], a[2][i], a[3][i]);
+        return new Vec4(a[i], a[4 + i], a[8 + i], a[12 + i]);
     }
     /**
        Create a new 4x4 translation matrix.
@@ -102,11 +150,11 @@ public class Mat4 {
        @param z the units to translate along the z axis
     */
     public static Mat4 translate(double x, double y, double z) {
-        return new Mat4(new double[][] {
-                {1, 0, 0, 0},
-                {0, 1, 0, 0},
-                {0, 0, 1, 0},
-                {x, y, z, 1},
+        return new Mat4(new double[] {
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                x, y, z, 1,
             });
     }
     /**
@@ -114,11 +162,11 @@ public class Mat4 {
        @param v the x, y, and z units to translate
     */
     public static Mat4 translate(Vec3 v) {
-        return new Mat4(new double[][] {
-                {  1,   0,   0, 0},
-                {  0,   1,   0, 0},
-                {  0,   0,   1, 0},
-                {v.x, v.y, v.z, 1},
+        return new Mat4(new double[] {
+                  1,   0,   0, 0,
+                  0,   1,   0, 0,
+                  0,   0,   1, 0,
+                v.x, v.y, v.z, 1,
             });
     }
     /**
@@ -128,14 +176,10 @@ public class Mat4 {
     */
     public static Mat4 translate(Mat4 m, Vec3 v) {
         Mat4 out = new Mat4(m);
-        Vec4 a = Vec4.mul(m.row(0), v.x);
-        Vec4 b = Vec4.mul(m.row(1), v.y);
-        Vec4 c = Vec4.mul(m.row(2), v.z);
-        Vec4 d = a.add(b).add(c).add(out.row(3));
-        out.a[3][0] = d.x;
-        out.a[3][1] = d.y;
-        out.a[3][2] = d.z;
-        out.a[3][3] = d.w;
+        double[] a = m.a;
+        for (int c=0; c<4; ++c)
+            out.a[12 + c] = a[c] * v.x + a[4 + c] * v.y + a[8 + c] * v.z +
+                a[12 + c];
         return out;
     }
     /**
@@ -145,11 +189,11 @@ public class Mat4 {
     public static Mat4 rotX(double angle) {
         double c = Math.cos(angle);
         double s = Math.sin(angle);
-        return new Mat4(new double[][] {
-                {1,  0, 0, 0},
-                {0,  c, s, 0},
-                {0, -s, c, 0},
-                {0,  0, 0, 1}
+        return new Mat4(new double[] {
+                1,  0, 0, 0,
+                0,  c, s, 0,
+                0, -s, c, 0,
+                0,  0, 0, 1,
             });
     }
     /**
@@ -159,11 +203,11 @@ public class Mat4 {
     public static Mat4 rotY(double angle) {
         double c = Math.cos(angle);
         double s = Math.sin(angle);
-        return new Mat4(new double[][] {
-                {c, 0, -s, 0},
-                {0, 1,  0, 0},
-                {s, 0,  c, 0},
-                {0, 0,  0, 1}
+        return new Mat4(new double[] {
+                c, 0, -s, 0,
+                0, 1,  0, 0,
+                s, 0,  c, 0,
+                0, 0,  0, 1,
             });
     }
     /**
@@ -173,11 +217,11 @@ public class Mat4 {
     public static Mat4 rotZ(double angle) {
         double c = Math.cos(angle);
         double s = Math.sin(angle);
-        return new Mat4(new double[][] {
-                { c, s, 0, 0},
-                {-s, 0, c, 0},
-                { 0, 0, 1, 0},
-                { 0, 0, 0, 1}
+        return new Mat4(new double[] {
+                 c, s, 0, 0,
+                -s, 0, c, 0,
+                 0, 0, 1, 0,
+                 0, 0, 0, 1,
             });
     }
     /**
@@ -200,17 +244,17 @@ public class Mat4 {
         Vec3 temp = Vec3.mul(axis, 1 - c);
         Mat4 m = new Mat4();
         // 
-        m.a[0][0] = c + temp.x * axis.x;
-        m.a[0][1] = temp.x * axis.y + s * axis.z;
-        m.a[0][2] = temp.x * axis.z - s * axis.y;
+        m.a[0] = c + temp.x * axis.x;
+        m.a[1] = temp.x * axis.y + s * axis.z;
+        m.a[2] = temp.x * axis.z - s * axis.y;
         //
-        m.a[1][0] = temp.y * axis.x - s * axis.z;
-        m.a[1][1] = c + temp.y * axis.y;
-        m.a[1][2] = temp.y * axis.z + s * axis.x;
+        m.a[4] = temp.y * axis.x - s * axis.z;
+        m.a[5] = c + temp.y * axis.y;
+        m.a[6] = temp.y * axis.z + s * axis.x;
         //
-        m.a[2][0] = temp.z * axis.x + s * axis.y;
-        m.a[2][1] = temp.z * axis.y - s * axis.x;
-        m.a[2][2] = c + temp.z * axis.z;
+        m.a[8] = temp.z * axis.x + s * axis.y;
+        m.a[9] = temp.z * axis.y - s * axis.x;
+        m.a[10] = c + temp.z * axis.z;
         return m;
     }
     /**
@@ -242,64 +286,120 @@ public class Mat4 {
     public static Mat4 ortho(double left, double right, double bottom,
                              double top, double near, double far) {
         Mat4 m = new Mat4();
-        m.a[0][0] = 2. / (right - left);
-        m.a[1][1] = 2. / (top - bottom);
-        m.a[2][2] = -2 / (far - near);
-        m.a[3][0] = -((right + left) / (right - left));
-        m.a[3][1] = -((top + bottom) / (top - bottom));
-        m.a[3][2] = -((far + near) / (far - near));
+        m.a[0] = 2. / (right - left);
+        m.a[5] = 2. / (top - bottom);
+        m.a[10] = -2 / (far - near);
+        m.a[12] = -((right + left) / (right - left));
+        m.a[13] = -((top + bottom) / (top - bottom));
+        m.a[14] = -((far + near) / (far - near));
         return m;
     }
     public static Mat4 inverseTranspose(Mat4 m) {
-        double[][] a = m.a;
-        double sf00 = a[2][2] * a[3][3] - a[3][2] * a[2][3];
-        double sf01 = a[2][1] * a[3][3] - a[3][1] * a[2][3];
-        double sf02 = a[2][1] * a[3][2] - a[3][1] * a[2][2];
-        double sf03 = a[2][0] * a[3][3] - a[3][0] * a[2][3];
-        double sf04 = a[2][0] * a[3][2] - a[3][0] * a[2][2];
-        double sf05 = a[2][0] * a[3][1] - a[3][0] * a[2][1];
-        double sf06 = a[1][2] * a[3][3] - a[3][2] * a[1][3];
-        double sf07 = a[1][1] * a[3][3] - a[3][1] * a[1][3];
-        double sf08 = a[1][1] * a[3][2] - a[3][1] * a[1][2];
-        double sf09 = a[1][0] * a[3][3] - a[3][0] * a[1][3];
-        double sf10 = a[1][0] * a[3][2] - a[3][0] * a[1][2];
-        double sf11 = a[1][0] * a[3][1] - a[3][0] * a[1][1];
-        double sf12 = a[1][2] * a[2][3] - a[2][2] * a[1][3];
-        double sf13 = a[1][1] * a[2][3] - a[2][1] * a[1][3];
-        double sf14 = a[1][1] * a[2][2] - a[2][1] * a[1][2];
-        double sf15 = a[1][0] * a[2][3] - a[2][0] * a[1][3];
-        double sf16 = a[1][0] * a[2][2] - a[2][0] * a[1][2];
-        double sf17 = a[1][0] * a[2][1] - a[2][0] * a[1][1];
+        return inverseTransposeInto(m, new Mat4(new double[16]));
+    }
+    /**
+       Same as inverseTranspose(m), written to out.
+       @param out the inverse transpose, not m
+       @return out
+    */
+    public static Mat4 inverseTransposeInto(Mat4 m, Mat4 out) {
+        double[] a = m.a, o = out.a;
+        if (m.isAffine()) {
+            // the general path with a[3], a[7], a[11] = 0 and a[15] = 1
+            double sf02 = a[9] * a[14] - a[13] * a[10];
+            double sf04 = a[8] * a[14] - a[12] * a[10];
+            double sf05 = a[8] * a[13] - a[12] * a[9];
+            double sf08 = a[5] * a[14] - a[13] * a[6];
+            double sf10 = a[4] * a[14] - a[12] * a[6];
+            double sf11 = a[4] * a[13] - a[12] * a[5];
+            double sf14 = a[5] * a[10] - a[9] * a[6];
+            double sf16 = a[4] * a[10] - a[8] * a[6];
+            double sf17 = a[4] * a[9] - a[8] * a[5];
+            //
+            o[0] = + (a[5] * a[10] - a[6] * a[9]);
+            o[1] = - (a[4] * a[10] - a[6] * a[8]);
+            o[2] = + (a[4] * a[9] - a[5] * a[8]);
+            o[3] = - (a[4] * sf02 - a[5] * sf04 + a[6] * sf05);
+            //
+            o[4] = - (a[1] * a[10] - a[2] * a[9]);
+            o[5] = + (a[0] * a[10] - a[2] * a[8]);
+            o[6] = - (a[0] * a[9] - a[1] * a[8]);
+            o[7] = + (a[0] * sf02 - a[1] * sf04 + a[2] * sf05);
+            //
+            o[8] = + (a[1] * a[6] - a[2] * a[5]);
+            o[9] = - (a[0] * a[6] - a[2] * a[4]);
+            o[10] = + (a[0] * a[5] - a[1] * a[4]);
+            o[11] = - (a[0] * sf08 - a[1] * sf10 + a[2] * sf11);
+            //
+            o[12] = o[13] = o[14] = 0;
+            o[15] = + (a[0] * sf14 - a[1] * sf16 + a[2] * sf17);
+            //
+            return out.div(+ a[0] * o[0] + a[1] * o[1] + a[2] * o[2]);
+        }
+        double sf00 = a[10] * a[15] - a[14] * a[11];
+        double sf01 = a[9] * a[15] - a[13] * a[11];
+        double sf02 = a[9] * a[14] - a[13] * a[10];
+        double sf03 = a[8] * a[15] - a[12] * a[11];
+        double sf04 = a[8] * a[14] - a[12] * a[10];
+        double sf05 = a[8] * a[13] - a[12] * a[9];
+        double sf06 = a[6] * a[15] - a[14] * a[7];
+        double sf07 = a[5] * a[15] - a[13] * a[7];
+        double sf08 = a[5] * a[14] - a[13] * a[6];
+        double sf09 = a[4] * a[15] - a[12] * a[7];
+        double sf10 = a[4] * a[14] - a[12] * a[6];
+        double sf11 = a[4] * a[13] - a[12] * a[5];
+        double sf12 = a[6] * a[11] - a[10] * a[7];
+        double sf13 = a[5] * a[11] - a[9] * a[7];
+        double sf14 = a[5] * a[10] - a[9] * a[6];
+        double sf15 = a[4] * a[11] - a[8] * a[7];
+        double sf16 = a[4] * a[10] - a[8] * a[6];
+        double sf17 = a[4] * a[9] - a[8] * a[5];
         //
-        Mat4 out = new Mat4();
-        out.a[0][0] = + (a[1][1] * sf00 - a[1][2] * sf01 + a[1][3] * sf02);
-        out.a[0][1] = - (a[1][0] * sf00 - a[1][2] * sf03 + a[1][3] * sf04);
-        out.a[0][2] = + (a[1][0] * sf01 - a[1][1] * sf03 + a[1][3] * sf05);
-        out.a[0][3] = - (a[1][0] * sf02 - a[1][1] * sf04 + a[1][2] * sf05);
+        o[0] = + (a[5] * sf00 - a[6] * sf01 + a[7] * sf02);
+        o[1] = - (a[4] * sf00 - a[6] * sf03 + a[7] * sf04);
+        o[2] = + (a[4] * sf01 - a[5] * sf03 + a[7] * sf05);
+        o[3] = - (a[4] * sf02 - a[5] * sf04 + a[6] * sf05);
         // 
-        out.a[1][0] = - (a[0][1] * sf00 - a[0][2] * sf01 + a[0][3] * sf02);
-        out.a[1][1] = + (a[0][0] * sf00 - a[0][2] * sf03 + a[0][3] * sf04);
-        out.a[1][2] = - (a[0][0] * sf01 - a[0][1] * sf03 + a[0][3] * sf05);
-        out.a[1][3] = + (a[0][0] * sf02 - a[0][1] * sf04 + a[0][2] * sf05);
+        o[4] = - (a[1] * sf00 - a[2] * sf01 + a[3] * sf02);
+        o[5] = + (a[0] * sf00 - a[2] * sf03 + a[3] * sf04);
+        o[6] = - (a[0] * sf01 - a[1] * sf03 + a[3] * sf05);
+        o[7] = + (a[0] * sf02 - a[1] * sf04 + a[2] * sf05);
         // 
-        out.a[2][0] = + (a[0][1] * sf06 - a[0][2] * sf07 + a[0][3] * sf08);
-        out.a[2][1] = - (a[0][0] * sf06 - a[0][2] * sf09 + a[0][3] * sf10);
-        out.a[2][2] = + (a[0][0] * sf07 - a[0][1] * sf09 + a[0][3] * sf11);
-        out.a[2][3] = - (a[0][0] * sf08 - a[0][1] * sf10 + a[0][2] * sf11);
+        o[8] = + (a[1] * sf06 - a[2] * sf07 + a[3] * sf08);
+        o[9] = - (a[0] * sf06 - a[2] * sf09 + a[3] * sf10);
+        o[10] = + (a[0] * sf07 - a[1] * sf09 + a[3] * sf11);
+        o[11] = - (a[0] * sf08 - a[1] * sf10 + a[2] * sf11);
         // 
-        out.a[3][0] = - (a[0][1] * sf12 - a[0][2] * sf13 + a[0][3] * sf14);
-        out.a[3][1] = + (a[0][0] * sf12 - a[0][2] * sf15 + a[0][3] * sf16);
-        out.a[3][2] = - (a[0][0] * sf13 - a[0][1] * sf15 + a[0][3] * sf17);
-        out.a[3][3] = + (a[0][0] * sf14 - a[0][1] * sf16 + a[0][2] * sf17);
+        o[12] = - (a[1] * sf12 - a[2] * sf13 + a[3] * sf14);
+        o[13] = + (a[0] * sf12 - a[2] * sf15 + a[3] * sf16);
+        o[14] = - (a[0] * sf13 - a[1] * sf15 + a[3] * sf17);
+        o[15] = + (a[0] * sf14 - a[1] * sf16 + a[2] * sf17);
         // 
         double d =
-            + a[0][0] * out.a[0][0]
-            + a[0][1] * out.a[0][1]
-            + a[0][2] * out.a[0][2]
-            + a[0][3] * out.a[0][3];
+            + a[0] * o[0]
+            + a[1] * o[1]
+            + a[2] * o[2]
+            + a[3] * o[3];
         // 
         return out.div(d);
     }
+    /**
+       Get the inverse of the matrix.
+       <p>
+       This is inverseTranspose() transposed back.
+       </p>
+    */
+    public static Mat4 inverse(Mat4 m) {
+        Mat4 out = inverseTranspose(m);
+        double[] o = out.a;
+        for (int r=0; r<4; ++r)
+            for (int c=r+1; c<4; ++c) {
+                double t = o[r * 4 + c];
+                o[r * 4 + c] = o[c * 4 + r];
+                o[c * 4 + r] = t;
+            }
+        return out;
+    }
     /**
        Get a matrix that will map NDC coords to screen coords.
        
@@ -307,11 +407,11 @@ public class Mat4 {
        @return a new Mat4
     */
     public static Mat4 ndcToScreen(Vec4 v) {
-        return new Mat4(new double[][] {
-                {      v.z / 2,             0, 0, 0},
-                {            0,      -v.w / 2, 0, 0},
-                {            0,             0, 1, 0},
-                {(v.z - 1) / 2, (v.w - 1) / 2, 0, 1}
+        return new Mat4(new double[] {
+                      v.z / 2,             0, 0, 0,
+                            0,      -v.w / 2, 0, 0,
+                            0,             0, 1, 0,
+                (v.z - 1) / 2, (v.w - 1) / 2, 0, 1,
             });
     }
     // ======================================================================
@@ -331,4 +431,44 @@ public class Mat4 {
     static public Mat4 topMatrix() {
         return stack.peek();
     }
+    // ======================================================================
+    // Timer
+    private static double time(Mat4 m, Mat4 n, int op, int reps) {
+        Mat4 out = new Mat4();
+        Vec3 v = new Vec3(1, 2, 3);
+        double sum = 0;
+        long t0 = System.nanoTime();
+        for (int i=0; i<reps; ++i) {
+            switch (op) {
+            case 0: m.mulInto(n, out); break;
+            case 1: m.mulInto(v, v); break;
+            case 2: inverseTransposeInto(m, out); break;
+            }
+            sum += out.a[i & 15];
+        }
+        long ns = System.nanoTime() - t0;
+        if (sum == 42) // keep the loop
+            System.out.println(sum);
+        return (double)ns / reps;
+    }
+    public static void main(String[] args) {
+        Mat4 affine = rotY(Math.toRadians(-45)).mul(rotX(.6))
+            .mul(translate(1, -2, 3))
+            .mul(ortho(-5, 5, -4, 4, 1000, -1000))
+            .mul(ndcToScreen(new Vec4(0, 0, 800, 600)));
+        Mat4 general = new Mat4(affine);
+        general.a[11] = .01;
+        String[] ops = {"mulInto(Mat4)", "mulInto(Vec3)",
+                        "inverseTranspose"};
+        int reps = 20000000;
+        for (int pass=0; pass<2; ++pass)
+            for (int op=0; op<3; ++op) {
+                double ta = time(affine, affine, op, reps);
+                double tg = time(general, general, op, reps);
+                if (pass == 1) // the first pass warms up
+                    System.out.printf("%-17s affine %6.2f ns" +
+                                      "  general %6.2f ns%n",
+                                      ops[op], ta, tg);
+            }
+    }
 }
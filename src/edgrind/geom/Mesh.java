@@ -6,93 +6,326 @@
 
 package edgrind.geom;
 
+import java.util.Map;
 import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.AbstractList;
 //
-import java.awt.Color;
+import java.lang.ref.WeakReference;
 //
 import edgrind.error.IllegalStateError;
 import edgrind.error.IllegalArgumentError;
 
 /**
    A collection of triangles.
+   <p>
+   The triangles are stored as flat arrays, see MeshBuilder, which is how
+   every mesh is made. A mesh doesn't change once it's built, so the views
+   of it built on demand are kept for its life. tris is a read only list
+   of Tri3 copies for code that wants them one at a time.
+   </p>
+   <p>
+   A mesh made by revolvePath() or revolvePolyline() keeps its profile so it
+   can be generated again with more or fewer segments around the axis, see
+   lod().
+   </p>
+   <p>
+   A revolved mesh is made of patches, one per line or arc of the profile,
+   each a run of triangles keyed by the segment it was revolved from.
+   revolvePath(elements, previous) copies the patches whose keys it shares
+   with a previous mesh instead of revolving them again, so changing one
+   dimension of a profile only revolves the segments it moved.
+   </p>
  */
 public class Mesh {
-    protected static final int N_CIRCLE_SEGS = 32;
-    // 
-    public List<Tri3> tris;
-    // 
-    protected List<Vec3> verts;
-    protected List<Vec3> norms;
-    Mesh() {
-        tris = new ArrayList<Tri3>();
-        verts = new ArrayList<Vec3>();
-        norms = new ArrayList<Vec3>();
+    /** Segments around the axis of a revolved surface. */
+    public static final int N_CIRCLE_SEGS = 32;
+    /** Segments around the axis of each level of detail, see lod(). */
+    public static final int[] LOD_SEGS = {8, 16, 32, 64};
+    /** Vertex coordinates, x, y, z for each vertex. */
+    protected final double[] verts;
+    /** Normal components, x, y, z for each normal. */
+    protected final double[] norms;
+    /** Indices into verts and norms, three of each per triangle. */
+    protected final int[] vidxs, nidxs;
+    /** The triangles as Tri3s, made as they're read. */
+    public final List<Tri3> tris = new AbstractList<Tri3>() {
+            @Override
+            public Tri3 get(int t) {
+                if (t < 0 || t >= size())
+                    throw new IndexOutOfBoundsException("triangle " + t);
+                return new Tri3(vec(verts, vidxs[t * 3]),
+                                vec(verts, vidxs[t * 3 + 1]),
+                                vec(verts, vidxs[t * 3 + 2]),
+                                vec(norms, nidxs[t * 3]),
+                                vec(norms, nidxs[t * 3 + 1]),
+                                vec(norms, nidxs[t * 3 + 2]));
+            }
+            @Override
+            public int size() {
+                return nTris();
+            }
+        };
+    /** Built on demand. */
+    private IndexedMesh indexed;
+    private EdgeTable edges;
+    private AABBox bounds;
+    private BVH bvh;
+    /** Indices of the vertices on the convex hull. */
+    private int[] hull;
+    /** Segments around the axis of a revolved surface. */
+    protected int circleSegs = N_CIRCLE_SEGS;
+    /** Largest distance of the revolved profile from the axis. */
+    protected double radius;
+    /** The revolved profile, null if this mesh wasn't revolved. */
+    private List<Object> profile;
+    /** The meshes of each LOD_SEGS level, built on demand. */
+    private Mesh[] levels;
+    /** The mesh this is one of the levels of, null if it isn't one. */
+    private Mesh base;
+    /** The MeshCache holding this mesh, told when it grows, see grown(). */
+    private volatile MeshCache cache;
+    /** The key of each patch of a revolved mesh, see segmentKey(). */
+    private List<Object> patchKeys;
+    /** Patch i is triangles patchTris[i] up to patchTris[i + 1]. */
+    private int[] patchTris;
+    /**
+       The mesh this one was revolved from, whose levels' patches lod()
+       reuses. It's held weakly so this mesh never keeps it or its levels
+       alive, once it's collected the levels are revolved in full.
+    */
+    private WeakReference<Mesh> donor;
+    /**
+       Make a mesh of the buffers, see MeshBuilder.build().
+    */
+    Mesh(double[] verts, double[] norms, int[] vidxs, int[] nidxs) {
+        this.verts = verts;
+        this.norms = norms;
+        this.vidxs = vidxs;
+        this.nidxs = nidxs;
+    }
+    private static Vec3 vec(double[] a, int i) {
+        return new Vec3(a[i * 3], a[i * 3 + 1], a[i * 3 + 2]);
+    }
+    /** Get the number of vertices. */
+    public int nVerts() {
+        return verts.length / 3;
+    }
+    /** Get the number of triangles. */
+    public int nTris() {
+        return vidxs.length / 3;
     }
+    /**
+       Get about how many bytes this mesh takes.
+       <p>
+       The vertex, normal and index arrays are counted, and so are the
+       views and levels of detail built so far, with theirs. A mesh grows
+       as they're built, the MeshCache holding it is told each time.
+       </p>
+       <p>
+       It doesn't lock the mesh, a view being built as it's called may not
+       be counted. Its builder calls grown() after.
+       </p>
+    */
+    public long memorySize() {
+        long n = 8L * (verts.length + norms.length) +
+            4L * (vidxs.length + nidxs.length);
+        IndexedMesh im = indexed;
+        EdgeTable et = edges;
+        BVH h = bvh;
+        int[] hv = hull;
+        Mesh[] ls = levels;
+        if (im != null)
+            n += im.memorySize();
+        if (et != null)
+            n += et.memorySize();
+        if (h != null)
+            n += h.memorySize();
+        if (hv != null)
+            n += 4L * hv.length;
+        if (patchTris != null)
+            n += 4L * patchTris.length;
+        if (ls != null)
+            for (int i=0; i<ls.length; ++i) {
+                Mesh l = ls[i];
+                if (l != null)
+                    n += l.memorySize();
+            }
+        return n;
+    }
+    /**
+       Set the cache holding this mesh, see MeshCache.put().
+       @param cache null once it's dropped
+    */
+    void setCache(MeshCache cache) {
+        this.cache = cache;
+    }
+    MeshCache getCache() {
+        return cache;
+    }
+    /**
+       Tell the cache holding this mesh, or the mesh this is a level of,
+       its new size after a view or level has been built.
+    */
+    private void grown() {
+        Mesh m = this;
+        while (m.base != null)
+            m = m.base;
+        MeshCache c = m.cache;
+        if (c != null)
+            c.resize(m, m.memorySize());
+    }
+    /** Same as getBBox(m, false). */
     public AABBox getBBox(Mat4 m) {
-        List<Vec3> vs = new ArrayList<Vec3>();
-        for (Vec3 v : verts) {
-            vs.add(m.mul(v));
-            vs.add(m.mul(v));
-            vs.add(m.mul(v));
-        }
-        return AABBox.fromVertices(vs);
+        return getBBox(m, false);
     }
     /**
-       Add the vertex to the verts array if it is not already present.
-       <p>Vertices are compared by Vec3.equals<p>
-       @param v the vertex to add
-       @return the vertex in the array
+       Get the box around this mesh transformed by a matrix.
+       <p>
+       The box is getBounds() transformed, see AABBox.transform(). It
+       holds the transformed mesh and every level of detail, but is larger
+       than the mesh unless the matrix only scales and translates.
+       </p>
+       <p>
+       If exact, the box is around this mesh's transformed vertices. Only
+       the vertices of the mesh's convex hull are transformed, see
+       ConvexHull. The hull is found on the first exact call and reused.
+       </p>
     */
-    Vec3 addVert(Vec3 v) {
-        int i = verts.indexOf(v);
-        if (i == -1) {
-            verts.add(v);
-            i = verts.size() - 1;
+    public AABBox getBBox(Mat4 m, boolean exact) {
+        if (!exact)
+            return getBounds().transform(m);
+        AABBox b = new AABBox();
+        Vec3 v = new Vec3();
+        for (int i : getHull()) {
+            v.set(verts[i * 3], verts[i * 3 + 1], verts[i * 3 + 2]);
+            b.add(m.mulInto(v, v));
+        }
+        return b;
+    }
+    private synchronized int[] getHull() {
+        if (hull == null) {
+            hull = ConvexHull.vertices(verts);
+            grown();
         }
-        return verts.get(i);
+        return hull;
     }
-    Vec3 addVert(double x, double y, double z) {
-        return addVert(new Vec3(x, y, z));
+    /**
+       Get the indexed view of this mesh's triangles.
+       <p>
+       The view is built on the first call and shares this mesh's arrays.
+       </p>
+    */
+    public synchronized IndexedMesh getIndexed() {
+        if (indexed == null) {
+            indexed = new IndexedMesh(verts, norms, vidxs, nidxs);
+            grown();
+        }
+        return indexed;
     }
     /**
-       Add the normals to the norms array if not already present.
-       @param ns the normals to add
-       @return the normal in the array
+       Get the table of this mesh's unique edges.
+       <p>
+       The table is built on the first call and reused.
+       </p>
     */
-    Vec3 addNormal(Vec3 n) {
-        int i = norms.indexOf(n);
-        if (i == -1) {
-            norms.add(n);
-            i = norms.size() - 1;
+    public synchronized EdgeTable getEdges() {
+        if (edges == null) {
+            edges = new EdgeTable(getIndexed());
+            grown();
         }
-        return norms.get(i);
+        return edges;
     }
-    void addTri(Vec3 v1, Vec3 v2, Vec3 v3) {
-        tris.add(new Tri3(v1, v2, v3));
+    /**
+       Get the bounding volume hierarchy of this mesh's triangles.
+       <p>
+       The hierarchy is built on the first call and reused.
+       </p>
+    */
+    public synchronized BVH getBVH() {
+        if (bvh == null) {
+            bvh = new BVH(getIndexed());
+            grown();
+        }
+        return bvh;
     }
-    void addTri(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 n) {
-        tris.add(new Tri3(v1, v2, v3, n));
+    /**
+       Get the box around this mesh's vertices.
+       <p>
+       A revolved mesh's box is widened to its radius around the axis so it
+       holds every level of detail, see lod(). The box is built on the first
+       call and reused. It's shared, don't modify it.
+       </p>
+    */
+    public synchronized AABBox getBounds() {
+        if (bounds == null) {
+            bounds = new AABBox();
+            IndexedMesh im = getIndexed();
+            if (im.nTris() > 0) {
+                double[] b = im.bounds;
+                bounds.add(new Vec3(b[0], b[1], b[2]));
+                bounds.add(new Vec3(b[3], b[4], b[5]));
+                if (profile != null) {
+                    bounds.add(new Vec3(-radius, -radius, b[2]));
+                    bounds.add(new Vec3(radius, radius, b[5]));
+                }
+            }
+        }
+        return bounds;
     }
-    void addTri(Vec3 v1, Vec3 v2, Vec3 v3, Color color) {
-        tris.add(new Tri3(v1, v2, v3, color));
+    /**
+       Get one of the levels built so far, null if it hasn't been.
+    */
+    private synchronized Mesh level(int i) {
+        return levels == null ? null : levels[i];
     }
-    void addTri(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 n1, Vec3 n2, Vec3 n3) {
-        tris.add(new Tri3(v1, v2, v3, n1, n2, n3));
+    /**
+       Get the level of detail of this mesh for a chord error tolerance.
+       <p>
+       The level is the coarsest of LOD_SEGS whose segments around the axis
+       stray from the true surface by no more than the tolerance, the finest
+       if none do. Arcs in the profile are divided by the same tolerance so
+       a small fillet gets fewer segments than a large one. Each level is
+       generated the first time it's needed and kept.
+       </p>
+       <p>
+       If this mesh wasn't revolved it's returned as is.
+       </p>
+       @param chordError the tolerance, in this mesh's units
+       @return this mesh or one of its levels
+    */
+    public synchronized Mesh lod(double chordError) {
+        if (profile == null)
+            return this;
+        int level = LOD_SEGS.length - 1;
+        for (int i=0; i<LOD_SEGS.length; ++i)
+            if (chordError(radius, LOD_SEGS[i]) <= chordError) {
+                level = i;
+                break;
+            }
+        if (LOD_SEGS[level] == circleSegs)
+            return this;
+        if (levels == null)
+            levels = new Mesh[LOD_SEGS.length];
+        if (levels[level] == null) {
+            Mesh d = donor == null ? null : donor.get();
+            levels[level] = revolve(profile, LOD_SEGS[level],
+                                    d == null ? null : d.level(level));
+            levels[level].base = this;
+            grown();
+        }
+        return levels[level];
     }
     /**
-       
-     */
-    void addQuad(Vec3 p1, Vec3 p2, Vec3 p3, Vec3 p4) {
-        addTri(p1, p2, p3);
-        addTri(p4, p1, p3);
-    }
-    void addQuad(Vec3 p1, Vec3 n1,
-                 Vec3 p2, Vec3 n2,
-                 Vec3 p3, Vec3 n3,
-                 Vec3 p4, Vec3 n4) {
-        addTri(p1, p2, p3, n1, n2, n3);
-        addTri(p4, p1, p3, n4, n1, n3);
+       Find how far a chord strays from a circle.
+       @param r the circle's radius
+       @param segs the number of chords around the circle
+       @return the distance from the middle of a chord to the circle
+    */
+    static double chordError(double r, int segs) {
+        return r * (1 - Math.cos(Math.PI / segs));
     }
     // ======================================================================
     // Cube
@@ -116,19 +349,19 @@ public class Mesh {
         return Mesh.newCube(1);
     }
     public static Mesh newCube(double size) {
-        Mesh m = new Mesh();
+        MeshBuilder m = new MeshBuilder();
         double s = size / 2;
         double t = s / 2;
         // front vertices
-        Vec3 v1 = m.addVert(new Vec3(s, -s, s));
-        Vec3 v2 = m.addVert(new Vec3(s, s, s));
-        Vec3 v3 = m.addVert(new Vec3(-s, s, s));
-        Vec3 v4 = m.addVert(new Vec3(-s, -s, s));
+        int v1 = m.addVert(new Vec3(s, -s, s));
+        int v2 = m.addVert(new Vec3(s, s, s));
+        int v3 = m.addVert(new Vec3(-s, s, s));
+        int v4 = m.addVert(new Vec3(-s, -s, s));
         // back vertices
-        Vec3 v5 = m.addVert(new Vec3(s, -s, -s));
-        Vec3 v6 = m.addVert(new Vec3(s, s, -s));
-        Vec3 v7 = m.addVert(new Vec3(-s, s, -s));
-        Vec3 v8 = m.addVert(new Vec3(-s, -s, -s));
+        int v5 = m.addVert(new Vec3(s, -s, -s));
+        int v6 = m.addVert(new Vec3(s, s, -s));
+        int v7 = m.addVert(new Vec3(-s, s, -s));
+        int v8 = m.addVert(new Vec3(-s, -s, -s));
         // 
         // front face
         m.addTri(v1, v2, v3);
@@ -148,7 +381,7 @@ public class Mesh {
         // bottom face
         m.addTri(v1, v4, v8);
         m.addTri(v8, v5, v1);
-        return m;
+        return m.build();
     }
     // ======================================================================
     // Cylinder
@@ -174,28 +407,36 @@ public class Mesh {
     */
     public static Mesh cylinder(double radius, double height, int nSides,
                                 Mat4 m) {
-        double incAngle = Math.PI * 2 / nSides, a;
-        Vec3 p1, p2, p3, p4, n2, n4;
+        double incAngle = Math.PI * 2 / nSides, a, c, s;
+        // one scratch point and its transform for the whole loop
+        Vec3 p = new Vec3(), t = new Vec3();
+        int n2, n4;
         Mat4 itm = Mat4.inverseTranspose(m);
-        Mesh mesh = new Mesh();
+        MeshBuilder mesh = new MeshBuilder();
         for (int i=0; i<nSides; ++i) {
             a = incAngle * i;
-            p1 = new Vec3(radius * Math.cos(a), radius * Math.sin(a), height);
-            p2 = new Vec3(p1.x, p1.y, 0);
-            n2 = mesh.addNormal(itm.mul(p2).norm());
-            p1 = mesh.addVert(m.mul(p1));
-            p2 = mesh.addVert(m.mul(p2));
+            c = radius * Math.cos(a);
+            s = radius * Math.sin(a);
+            p.set(c, s, 0);
+            n2 = mesh.addNormal(itm.mulInto(p, t).norm());
+            p.set(c, s, height);
+            int i1 = mesh.addVert(m.mulInto(p, t));
+            p.set(c, s, 0);
+            int i2 = mesh.addVert(m.mulInto(p, t));
             // 
             a = incAngle * (i + 1);
-            p3 = new Vec3(radius * Math.cos(a), radius * Math.sin(a), height);
-            p4 = new Vec3(p3.x, p3.y, 0);
-            n4 = mesh.addNormal(itm.mul(p4).norm());
-            p3 = mesh.addVert(m.mul(p3));
-            p4 = mesh.addVert(m.mul(p4));
-            mesh.addTri(p1, p2, p3, n2, n2, n4);
-            mesh.addTri(p3, p2, p4, n4, n2, n4);
+            c = radius * Math.cos(a);
+            s = radius * Math.sin(a);
+            p.set(c, s, 0);
+            n4 = mesh.addNormal(itm.mulInto(p, t).norm());
+            p.set(c, s, height);
+            int i3 = mesh.addVert(m.mulInto(p, t));
+            p.set(c, s, 0);
+            int i4 = mesh.addVert(m.mulInto(p, t));
+            mesh.addTri(i1, i2, i3, n2, n2, n4);
+            mesh.addTri(i3, i2, i4, n4, n2, n4);
         }
-        return mesh;
+        return mesh.build();
     }
     public static Mesh cylinder() {
         return cylinder(1, 1, N_CIRCLE_SEGS, new Mat4());
@@ -223,20 +464,21 @@ public class Mesh {
        @param m the transformation matrix
     */
     public static Mesh disk(double radius, int nSides, Mat4 m) {
-        Mesh mesh = new Mesh();
+        MeshBuilder mesh = new MeshBuilder();
         double incAngle = Math.PI * 2 / nSides, a = 0;
-        Vec3 v1 = mesh.addVert(m.mul(new Vec3()));
-        Vec3 v2 = mesh.addVert(m.mul(new Vec3(radius, 0, 0)));
-        Vec3 v3 = null;
+        Vec3 p = new Vec3();
+        int v1 = mesh.addVert(m.mulInto(p, p));
+        p.set(radius, 0, 0);
+        int v2 = mesh.addVert(m.mulInto(p, p));
+        int v3;
         for (int i=1; i<=nSides; ++i) {
             a = incAngle * i;
-            v3 = mesh.addVert(m.mul(new Vec3(radius * Math.cos(a),
-                                             radius * Math.sin(a),
-                                             0)));
+            p.set(radius * Math.cos(a), radius * Math.sin(a), 0);
+            v3 = mesh.addVert(m.mulInto(p, p));
             mesh.addTri(v1, v2, v3);
             v2 = v3;
         }
-        return mesh;
+        return mesh.build();
     }
     public static Mesh disk(double radius) {
         return disk(radius, N_CIRCLE_SEGS);
@@ -247,227 +489,16 @@ public class Mesh {
     public static Mesh disk(double radius, int nSides) {
         return disk(radius, nSides, new Mat4());
     }
-    /**
-       Rotate the line seg adding a disk, cone, or cylindric to this mesh.
-       <p>
-       p1 and p2 should lay in the y/z plane. The axis of revolution will be
-       the z axis. The surface will be rotated ccw looking down the z- axis
-       with normals pointing outward.
-       </p>
-       @param v1 the first point on the line seg
-       @param v2 the second point on the line seg
-    */
-    private void addRevLineSeg(Vec3 v1, Vec3 v2) {
-        double incAngle = Math.PI * 2 / N_CIRCLE_SEGS, a = 0;
-        double y1 = v1.y, z1 = v1.z, y2 = v2.y, z2 = v2.z, tmp;
-        if (Eps.zero(y1) || Eps.zero(y2)) {
-            if (Eps.eq(z1, z2)) {
-                // disk with no hole
-                boolean rev = Eps.zero(y2);
-                double r = Math.abs(y2 - y1);
-                // disk center
-                Vec3 p1 = addVert(0, rev ? y2 : y1, z1);
-                // first point on circumference
-                Vec3 p2 = addVert(r, 0, z1);
-                Vec3 p3 = null;
-                for (int i=1; i<=N_CIRCLE_SEGS; ++i) {
-                    a = incAngle * i;
-                    p3 = addVert(r * Math.cos(a), r * Math.sin(a), z1);
-                    if (rev)
-                        addTri(p1, p2, p3);
-                    else
-                        addTri(p1, p3, p2);
-                    p2 = p3;
-                }
-            }
-            else {
-                // cone with apex on the z axis
-            }
-        }
-        else if (Eps.eq(y1, y2)) {
-            // cylinder
-            if (Eps.lt(z2, z1)) {
-                // make z1 < z2
-                tmp = z2;
-                z2 = z1;
-                z1 = tmp;
-            }
-            double r = y1;
-            Vec3 p1, p2, p3, p4, n1, n2;
-            for (int i=0; i<N_CIRCLE_SEGS; ++i) {
-                a = incAngle * i;
-                p1 = addVert(r * Math.cos(a), r * Math.sin(a), z2);
-                p2 = addVert(p1.x, p1.y, z1);
-                n1 = addNormal(new Vec3(p1.x, p1.y, 0).norm());
-                // 
-                a = incAngle * (i + 1);
-                p3 = addVert(r * Math.cos(a), r * Math.sin(a), z1);
-                p4 = addVert(p3.x, p3.y, z2);
-                n2 = addNormal(new Vec3(p3.x, p3.y, 0).norm());
-                addTri(p1, p2, p3, n1, n1, n2);
-                addTri(p3, p4, p1, n2, n2, n1);
-            }
-        }
-        else if (z1 == z2) {
-            // disk with a hole in it
-            boolean rev = Eps.lt(y2, y1);
-            double r1 = rev ? y2 : y1; // little r
-            double r2 = rev ? y1 : y2; // big r
-            Vec3 p1, p2, p3, p4;
-            for (int i=0; i<=N_CIRCLE_SEGS; ++i) {
-                a = incAngle * i;
-                double c = Math.cos(a);
-                double s = Math.sin(a);
-                p1 = addVert(r1 * c, r1 * s, z1);
-                p2 = addVert(r2 * c, r2 * s, z1);
-                a = incAngle * (i + 1);
-                c = Math.cos(a);
-                s = Math.sin(a);
-                p3 = addVert(r2 * c, r2 * s, z1);
-                p4 = addVert(r1 * c, r1 * s, z1);
-                if (rev) {
-                    addTri(p1, p2, p3);
-                    addTri(p3, p4, p1);
-                }
-                else {
-                    addTri(p1, p3, p2);
-                    addTri(p1, p4, p3);
-                }
-            }
-        }
-        else {
-            // truncated cone
-            Vec3 lineN = new Vec3(v2, v1).norm();
-            if (Eps.lt(z2, z1)) {
-                // make z1 < z2
-                tmp = z2;
-                z2 = z1;
-                z1 = tmp;
-                tmp = y2;
-                y2 = y1;
-                y1 = tmp;
-                lineN.neg();
-            }
-            Mat4 m;
-            double c, s;
-            Vec3 linePerp = new Vec3(-lineN.z, 0, lineN.y);
-            Vec3 zaxis = new Vec3(0, 0, 1);
-            boolean rev = Eps.lt(y2, y1);
-            double r1 = rev ? y2 : y1;
-            double r2 = rev ? y1 : y2;
-            Vec3 p1, p2, p3, p4, n1, n2;
-            for (int i=0; i<N_CIRCLE_SEGS; ++i) {
-                a = incAngle * i;
-                m = Mat4.axisAngle(zaxis, a);
-                n1 = addNormal(m.mul(linePerp).norm());
-                c = Math.cos(a);
-                s = Math.sin(a);
-                p1 = addVert(r1 * c, r1 * s, z2);
-                p2 = addVert(r2 * c, r2 * s, z1);
-                a = incAngle * (i + 1);
-                m = Mat4.axisAngle(zaxis, a);
-                n2 = addNormal(m.mul(linePerp).norm());
-                c = Math.cos(a);
-                s = Math.sin(a);
-                p3 = addVert(r2 * c, r2 * s, z1);
-                p4 = addVert(r1 * c, r1 * s, z2);
-                addTri(p1, p2, p3, n1, n1, n2);
-                addTri(p3, p4, p1, n2, n2, n1);
-            }
-        }
-    }
-    /**
-       Add a revolved arc patch to this mesh.
-       <p>
-       The arc must have a clock-wise orientation.
-       </p>
-     */
-    public void addRevArc(Arc2 arc) {
-        // arc parameters
-        Vec2 sp = arc.startPt();
-        Vec2 ep = arc.endPt();
-        Vec2 cp = arc.centerPt();
-        double angStep = 360 / N_CIRCLE_SEGS;
-        int segs = Math.max((int)(Math.abs(arc.sweepAngle()) / angStep), 3);
-        double step = arc.sweepAngle() / segs;
-        double sa = arc.startAngle();
-        double a1 = Math.toRadians(sa);
-        double sa1 = Math.sin(a1);
-        double ca1 = Math.cos(a1);
-        double a2, sa2, ca2, x1, y1, x2, y2;
-        // patch parameters
-        double incAngle = Math.PI * 2 / N_CIRCLE_SEGS, a, c, s;
-        Vec3 p1, p2, p3, p4;
-        Vec3 cp3 = new Vec3(cp.y, 0, cp.x), cp3t;
-        Vec3 zaxis = new Vec3(0, 0, 1);
-        Vec3 n1, n2, n3, n4;
-        Mat4 m;
-        for (int i=1; i<=segs; ++i) {
-            a2 = Math.toRadians(sa + step * i);
-            sa2 = Math.sin(a2);
-            ca2 = Math.cos(a2);
-            x1 = arc.cx + arc.r * ca1;
-            y1 = arc.cy + arc.r * sa1;
-            x2 = arc.cx + arc.r * ca2;
-            y2 = arc.cy + arc.r * sa2;
-            // System.out.println("(" + x1 + "," + y1 + ")(" +
-            //                    x2 + "," + y2 + ")");
-            /*
-             x1,y1 and x2,y2 define a line segement along the arc in a
-             clockwise direction looking down the Z- axis. This line seg gets
-             rotated 90+ degrees about the Y axis onto the YZ plane. So the x
-             coord becomes the z coord and the y coord stays the y coord.
-            */
-            for (int j=0; j<N_CIRCLE_SEGS; ++j) {
-                a = incAngle * j;
-                c = Math.cos(a);
-                s = Math.sin(a);
-                p1 = addVert(y1 * c, y1 * s, x1);
-                // System.out.println("p1:" + p1);
-                p2 = addVert(y2 * c, y2 * s, x2);
-                m = Mat4.axisAngle(zaxis, a);
-                cp3t = m.mul(cp3);
-                // System.out.println("cp3t:" + cp3t);
-                n1 = new Vec3(cp3t, p1).norm();
-                // System.out.println("n1:" + n1);
-                n2 = new Vec3(cp3t, p2).norm();
-                // 
-                a = incAngle * (j + 1);
-                c = Math.cos(a);
-                s = Math.sin(a);
-                p3 = addVert(y2 * c, y2 * s, x2);
-                p4 = addVert(y1 * c, y1 * s, x1);
-                m = Mat4.axisAngle(zaxis, a);
-                cp3t = m.mul(cp3);
-                // System.out.println("cp3t:" + cp3t);
-                n3 = new Vec3(cp3t, p3).norm();
-                n4 = new Vec3(cp3t, p4).norm();
-                // 
-                addTri(p1, p4, p3, n1, n4, n3);
-                addTri(p3, p2, p1, n3, n2, n1);
-            }
-            a1 = a2;
-            sa1 = sa2;
-            ca1 = ca2;
-        }
-    }
     /**
        Create a new Mesh by revolving the 2d polyline about the z axis.
 
        @param pts the list of 2 or more points defining the polyline
     */
     public static Mesh revolvePolyline(List<Vec2> pts) {
-        Mesh mesh = new Mesh();
         if (pts.size() < 2)
             throw new IllegalStateError("2 or more vertices required in" +
                                         " polyline");
-        Vec2 p1 = pts.get(0), p2 = null;
-        for (Vec2 v : pts.subList(1, pts.size())) {
-            mesh.addRevLineSeg(new Vec3(0, p1.y, p1.x),
-                               new Vec3(0, v.y, v.x));
-            p1 = v;
-        }
-        return mesh;
+        return revolve(new ArrayList<Object>(pts), N_CIRCLE_SEGS, null);
     }
     /**
        Create a new Mesh by revolving the 2d path about the z axis.
@@ -475,6 +506,19 @@ public class Mesh {
        @param elements list of one or more Vec2 and/or Arc2 elements.
     */
     public static Mesh revolvePath(List<Object> elements) {
+        return revolvePath(elements, null);
+    }
+    /**
+       Same as revolvePath(elements), reusing the patches of a mesh revolved
+       from a path that shares some of its segments.
+       <p>
+       A segment is reused only if it's exactly the same, and an arc only
+       if the mesh's radius is too, its division depends on it. The result
+       is the mesh revolvePath(elements) makes.
+       </p>
+       @param previous a mesh made by revolvePath(), or null
+    */
+    public static Mesh revolvePath(List<Object> elements, Mesh previous) {
         // some error handling...
         switch (elements.size()) {
             case 0:
@@ -490,7 +534,28 @@ public class Mesh {
             default:
                 break;
         }
-        Mesh mesh = new Mesh();
+        return revolve(new ArrayList<Object>(elements), N_CIRCLE_SEGS,
+                       previous);
+    }
+    /**
+       Revolve the path with the given number of segments around the axis.
+       <p>
+       Each segment is revolved on its own into a patch, or copied from
+       previous if it has a patch of the same key. The patches are then
+       spliced together.
+       </p>
+       @param previous a revolved mesh to reuse patches of, or null
+    */
+    private static Mesh revolve(List<Object> elements, int circleSegs,
+                                Mesh previous) {
+        double radius = 0;
+        for (Object e : elements)
+            if (e instanceof Vec2)
+                radius = Math.max(radius, Math.abs(((Vec2)e).y));
+            else if (e instanceof Arc2)
+                radius = Math.max(radius,
+                                  Math.abs(((Arc2)e).cy) + ((Arc2)e).r);
+        List<Object> segments = new ArrayList<Object>();
         Object e1 = null, e2 = null;
         for (Object e : elements) {
             if (e1 == null) {
@@ -498,54 +563,194 @@ public class Mesh {
                 continue;
             }
             e2 = e;
-            revElements(mesh, e1, e2);
+            segment(segments, e1, e2);
             if (e1 instanceof Arc2 && e1 != null) {
                 e1 = ((Arc2)e1).endPt();
-                revElements(mesh, e1, e2);
+                segment(segments, e1, e2);
             }
             e1 = e2;
             e2 = null;
         }
         if (e2 == null)
-            revElements(mesh, e1, e2);
+            segment(segments, e1, e2);
+        Map<Object, Integer> reusable = new HashMap<Object, Integer>();
+        if (previous != null && previous.patchKeys != null)
+            for (int i=previous.patchKeys.size() - 1; i>=0; --i)
+                reusable.put(previous.patchKeys.get(i), i);
+        List<Object> keys = new ArrayList<Object>();
+        List<Mesh> patches = new ArrayList<Mesh>();
+        for (Object s : segments) {
+            Object key = segmentKey(s, circleSegs, radius);
+            Integer p = reusable.get(key);
+            keys.add(key);
+            patches.add(p == null ? revolveSegment(s, circleSegs, radius)
+                        : previous.patch(p));
+        }
+        Mesh mesh = splice(segments, patches);
+        mesh.circleSegs = circleSegs;
+        mesh.radius = radius;
+        mesh.profile = elements;
+        mesh.patchKeys = keys;
+        if (previous != null)
+            mesh.donor = new WeakReference<Mesh>(previous);
         return mesh;
     }
     /**
-       Add the revolved segement to the mesh.
+       Add the segment between two elements to be revolved.
        <p>
        The segment will be:
        <ul>
-       <li>a line if e1 and e2 are both Vec2</li>
+       <li>a line, as a Vec2[2], if e1 is a Vec2 and e2 is a Vec2 or the
+       start of an Arc2</li>
        <li>an arc if e1 is an Arc2, e2 will be ignored
        </ul>
+       Nothing is added if e1 is a Vec2 and e2 is null.
        </p>
     */
-    private static void revElements(Mesh mesh, Object e1, Object e2) {
-        Arc2 a;
-        Vec2 p1, p2;
+    private static void segment(List<Object> segments, Object e1, Object e2) {
         if (e1 instanceof Vec2) {
-            p1 = (Vec2)e1;
-            if (e2 instanceof Vec2) {
+            Vec2 p1 = (Vec2)e1;
+            if (e2 instanceof Vec2)
                 // point to point
-                p2 = (Vec2)e2;
-                mesh.addRevLineSeg(new Vec3(0, p1.y, p1.x),
-                                   new Vec3(0, p2.y, p2.x));
-            }
-            else if (e2 instanceof Arc2) {
+                segments.add(new Vec2[] {p1, (Vec2)e2});
+            else if (e2 instanceof Arc2)
                 // point to arc start point
-                a = (Arc2)e2;
-                p2 = a.startPt();
-                mesh.addRevLineSeg(new Vec3(0, p1.y, p1.x),
-                                   new Vec3(0, p2.y, p2.x));
-            }
+                segments.add(new Vec2[] {p1, ((Arc2)e2).startPt()});
             else if (e2 == null)
                 ;               // no op
             else
                 throw new IllegalArgumentError("expected a Vec2 or Arc2");
         }
         else if (e1 instanceof Arc2)
-            mesh.addRevArc((Arc2)e1);
+            segments.add(e1);
         else
             throw new IllegalArgumentError("expected a Vec2 or Arc2");
     }
+    /**
+       Get a key equal to another segment's only if the two are revolved
+       into the same patch.
+    */
+    private static Object segmentKey(Object s, int circleSegs,
+                                     double radius) {
+        if (s instanceof Arc2) {
+            Arc2 a = (Arc2)s;
+            return Arrays.<Object>asList(a.cx, a.cy, a.r, a.startAngle(),
+                                         a.sweepAngle(), circleSegs, radius);
+        }
+        Vec2[] l = (Vec2[])s;
+        return Arrays.<Object>asList(l[0].x, l[0].y, l[1].x, l[1].y,
+                                     circleSegs);
+    }
+    /**
+       Revolve one segment into a patch of its own.
+    */
+    private static Mesh revolveSegment(Object s, int circleSegs,
+                                       double radius) {
+        MeshBuilder b = new MeshBuilder();
+        if (s instanceof Arc2)
+            b.addRevArc((Arc2)s, circleSegs, radius);
+        else {
+            Vec2 p1 = ((Vec2[])s)[0], p2 = ((Vec2[])s)[1];
+            b.addRevLineSeg(new Vec3(0, p1.y, p1.x),
+                            new Vec3(0, p2.y, p2.x), circleSegs);
+        }
+        return b.build();
+    }
+    /**
+       Get a copy of one of this mesh's patches, numbered as
+       revolveSegment() numbers it.
+    */
+    private Mesh patch(int p) {
+        int[] vi = Arrays.copyOfRange(vidxs, patchTris[p] * 3,
+                                      patchTris[p + 1] * 3);
+        int[] ni = Arrays.copyOfRange(nidxs, patchTris[p] * 3,
+                                      patchTris[p + 1] * 3);
+        return new Mesh(MeshBuilder.renumber(verts, nVerts(), vi),
+                        MeshBuilder.renumber(norms, norms.length / 3, ni),
+                        vi, ni);
+    }
+    /**
+       Join the patches into one mesh, in order.
+       <p>
+       A patch's vertices on the rings where it meets its neighbors, those
+       at the ends of its segment, are welded to the equal vertices of the
+       patches before it, as a MeshBuilder of the whole path would weld
+       them. The rest of its vertices are its own, only the ring vertices
+       are hashed. Its normals are its own.
+       </p>
+    */
+    private static Mesh splice(List<Object> segments, List<Mesh> patches) {
+        int nv = 0, nn = 0, ni = 0;
+        for (Mesh m : patches) {
+            nv += m.verts.length;
+            nn += m.norms.length;
+            ni += m.vidxs.length;
+        }
+        double[] verts = new double[nv], norms = new double[nn];
+        int[] vidxs = new int[ni], nidxs = new int[ni];
+        int[] patchTris = new int[patches.size() + 1];
+        VertexWelder rings = new VertexWelder();
+        double[] ends = new double[4];
+        nv = nn = ni = 0;
+        for (int p=0; p<patches.size(); ++p) {
+            Mesh m = patches.get(p);
+            ends(segments.get(p), ends);
+            int[] map = new int[m.nVerts()];
+            for (int i=0; i<map.length; ++i) {
+                double x = m.verts[i * 3], y = m.verts[i * 3 + 1];
+                double z = m.verts[i * 3 + 2];
+                boolean ring = onRing(x, y, z, ends[0], ends[1]) ||
+                    onRing(x, y, z, ends[2], ends[3]);
+                int j = ring ? rings.find(verts, x, y, z) : -1;
+                if (j == -1) {
+                    j = nv++;
+                    System.arraycopy(m.verts, i * 3, verts, j * 3, 3);
+                    if (ring)
+                        rings.insert(j, x, y, z);
+                }
+                map[i] = j;
+            }
+            System.arraycopy(m.norms, 0, norms, nn * 3, m.norms.length);
+            for (int k=0; k<m.vidxs.length; ++k) {
+                vidxs[ni + k] = map[m.vidxs[k]];
+                nidxs[ni + k] = nn + m.nidxs[k];
+            }
+            nn += m.norms.length / 3;
+            ni += m.vidxs.length;
+            patchTris[p + 1] = ni / 3;
+        }
+        Mesh mesh = new Mesh(Arrays.copyOf(verts, nv * 3), norms, vidxs,
+                             nidxs);
+        mesh.patchTris = patchTris;
+        return mesh;
+    }
+    /**
+       Get the axial and radial coordinates of a segment's ends, z then r
+       of the start then of the end.
+    */
+    private static void ends(Object s, double[] out) {
+        Vec2 p1, p2;
+        if (s instanceof Arc2) {
+            p1 = ((Arc2)s).startPt();
+            p2 = ((Arc2)s).endPt();
+        }
+        else {
+            p1 = ((Vec2[])s)[0];
+            p2 = ((Vec2[])s)[1];
+        }
+        out[0] = p1.x;
+        out[1] = Math.abs(p1.y);
+        out[2] = p2.x;
+        out[3] = Math.abs(p2.y);
+    }
+    /**
+       Find if a vertex could be welded to one on the ring a profile point
+       revolves to. The ring's vertices are rounded from the point, so the
+       test is looser than a weld.
+    */
+    private static boolean onRing(double x, double y, double z, double rz,
+                                  double rr) {
+        return Math.abs(z - rz) <= 4 * Eps.EPSILON &&
+            Math.abs(Math.sqrt(x * x + y * y) - rr) <= 4 * Eps.EPSILON;
+    }
 }
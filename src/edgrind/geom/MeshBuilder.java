@@ -0,0 +1,426 @@
+/*
+  MeshBuilder.java
+  S. Edward Dolan
+  Wednesday, January 3 2024
+*/
+
+package edgrind.geom;
+
+import java.util.Arrays;
+
+/**
+   Build a Mesh's triangles into flat arrays.
+   <p>
+   Vertices and normals are x, y, z triples in double[] buffers and each
+   triangle is three indices into each, so a triangle costs six ints instead
+   of a Tri3 and its seven Vec3s. addVert() and addNormal() weld a vector to
+   an equal one already added, see VertexWelder, and return its index.
+   newNormal() always adds, for a normal only the triangles of one patch
+   share.
+   </p>
+   <p>
+   A triangle's vertex normals are turned to the side its winding faces, as
+   Tri3 does. A normal is shared by index, so turning it turns it for every
+   triangle that uses it.
+   </p>
+*/
+public class MeshBuilder {
+    private double[] verts = new double[3 * 64];
+    private double[] norms = new double[3 * 64];
+    private int[] vidxs = new int[3 * 64];
+    private int[] nidxs = new int[3 * 64];
+    private int nVerts, nNorms, nTris;
+    private final VertexWelder vertWelder = new VertexWelder();
+    private final VertexWelder normWelder = new VertexWelder();
+    /** Scratch for the revolve loops and faceNormal(). */
+    private final Vec3 va = new Vec3(), vb = new Vec3(), faceN = new Vec3();
+    /** rots[i] turns i circle segments about z, see rotations(). */
+    private Mat4[] rots = new Mat4[0];
+    /**
+       Add the vertex if an equal one hasn't been added.
+       @return the index of the vertex
+    */
+    public int addVert(double x, double y, double z) {
+        int i = vertWelder.find(verts, x, y, z);
+        if (i == -1) {
+            i = nVerts++;
+            verts = put(verts, i, x, y, z);
+            vertWelder.insert(i, x, y, z);
+        }
+        return i;
+    }
+    public int addVert(Vec3 v) {
+        return addVert(v.x, v.y, v.z);
+    }
+    /** Get a copy of a vertex. */
+    public Vec3 getVert(int i) {
+        return getVert(i, new Vec3());
+    }
+    /**
+       Set out to a vertex.
+       @return out
+    */
+    public Vec3 getVert(int i, Vec3 out) {
+        out.set(verts[i * 3], verts[i * 3 + 1], verts[i * 3 + 2]);
+        return out;
+    }
+    /**
+       Add the normal if an equal one hasn't been added by this method.
+       @return the index of the normal
+    */
+    public int addNormal(Vec3 n) {
+        int i = normWelder.find(norms, n.x, n.y, n.z);
+        if (i == -1) {
+            i = newNormal(n);
+            normWelder.insert(i, n.x, n.y, n.z);
+        }
+        return i;
+    }
+    /**
+       Add the normal even if an equal one has been added.
+       @return the index of the normal
+    */
+    public int newNormal(Vec3 n) {
+        int i = nNorms++;
+        norms = put(norms, i, n.x, n.y, n.z);
+        return i;
+    }
+    /**
+       Add a triangle, its normal is the normal of its face.
+    */
+    public void addTri(int v1, int v2, int v3) {
+        int n = newNormal(faceNormal(v1, v2, v3));
+        put(v1, v2, v3, n, n, n);
+    }
+    /**
+       Add a triangle with a normal at each vertex.
+    */
+    public void addTri(int v1, int v2, int v3, int n1, int n2, int n3) {
+        Vec3 n = faceNormal(v1, v2, v3);
+        face(n, n1);
+        face(n, n2);
+        face(n, n3);
+        put(v1, v2, v3, n1, n2, n3);
+    }
+    /**
+       Get the unit normal of the face with counter clockwise winding.
+       @return faceN, good until the next call
+    */
+    private Vec3 faceNormal(int v1, int v2, int v3) {
+        Vec3 p1 = getVert(v1, faceN);
+        Vec3.subInto(getVert(v2, va), p1, va);
+        Vec3.subInto(getVert(v3, vb), p1, vb);
+        return Vec3.crossInto(va, vb, faceN).norm();
+    }
+    /**
+       Get the rotations about the z axis of each multiple of 2pi /
+       circleSegs, from 0 to 2pi. They're made once per circleSegs rather
+       than once per patch.
+    */
+    private Mat4[] rotations(int circleSegs) {
+        if (rots.length != circleSegs + 1) {
+            double incAngle = Math.PI * 2 / circleSegs;
+            Vec3 zaxis = new Vec3(0, 0, 1);
+            rots = new Mat4[circleSegs + 1];
+            for (int i=0; i<=circleSegs; ++i)
+                rots[i] = Mat4.axisAngle(zaxis, incAngle * i);
+        }
+        return rots;
+    }
+    /**
+       Reverse a normal pointing away from the face normal n.
+    */
+    private void face(Vec3 n, int i) {
+        int c = i * 3;
+        double x = norms[c], y = norms[c + 1], z = norms[c + 2];
+        if (n.x * x + n.y * y + n.z * z >= 0)
+            return;
+        if (normWelder.remove(i, x, y, z))
+            normWelder.insert(i, -x, -y, -z);
+        norms[c] = -x;
+        norms[c + 1] = -y;
+        norms[c + 2] = -z;
+    }
+    private void put(int v1, int v2, int v3, int n1, int n2, int n3) {
+        int k = nTris++ * 3;
+        if (k + 3 > vidxs.length) {
+            vidxs = Arrays.copyOf(vidxs, vidxs.length * 2);
+            nidxs = Arrays.copyOf(nidxs, nidxs.length * 2);
+        }
+        vidxs[k] = v1;
+        vidxs[k + 1] = v2;
+        vidxs[k + 2] = v3;
+        nidxs[k] = n1;
+        nidxs[k + 1] = n2;
+        nidxs[k + 2] = n3;
+    }
+    private static double[] put(double[] a, int i, double x, double y,
+                                 double z) {
+        if (i * 3 + 3 > a.length)
+            a = Arrays.copyOf(a, a.length * 2);
+        a[i * 3] = x;
+        a[i * 3 + 1] = y;
+        a[i * 3 + 2] = z;
+        return a;
+    }
+    /** Get the number of triangles added so far. */
+    public int nTris() {
+        return nTris;
+    }
+    /**
+       Make a Mesh of the triangles added so far.
+       <p>
+       The mesh gets copies of the buffers, this builder can go on adding.
+       Vertices and normals are numbered in the order the triangles first
+       use them, so a triangle's are near its neighbors' in memory. Those
+       no triangle uses are dropped.
+       </p>
+    */
+    public Mesh build() {
+        int[] vi = Arrays.copyOf(vidxs, nTris * 3);
+        int[] ni = Arrays.copyOf(nidxs, nTris * 3);
+        return new Mesh(renumber(verts, nVerts, vi),
+                        renumber(norms, nNorms, ni), vi, ni);
+    }
+    /**
+       Renumber the vectors in the order idxs first uses them.
+       @param idxs the indices into a, changed to index the result
+       @return the used vectors of a in their new order
+    */
+    static double[] renumber(double[] a, int n, int[] idxs) {
+        int[] map = new int[n];
+        Arrays.fill(map, -1);
+        int m = 0;
+        for (int k=0; k<idxs.length; ++k) {
+            int i = idxs[k];
+            if (map[i] == -1)
+                map[i] = m++;
+            idxs[k] = map[i];
+        }
+        double[] out = new double[m * 3];
+        for (int i=0; i<n; ++i)
+            if (map[i] != -1)
+                System.arraycopy(a, i * 3, out, map[i] * 3, 3);
+        return out;
+    }
+    // ======================================================================
+    // Revolved surfaces
+    // ======================================================================
+    /**
+       Rotate the line seg adding a disk, cone, or cylindric.
+       <p>
+       p1 and p2 should lay in the y/z plane. The axis of revolution will be
+       the z axis. The surface will be rotated ccw looking down the z- axis
+       with normals pointing outward.
+       </p>
+       @param v1 the first point on the line seg
+       @param v2 the second point on the line seg
+       @param circleSegs the number of segments around the axis
+    */
+    void addRevLineSeg(Vec3 v1, Vec3 v2, int circleSegs) {
+        double incAngle = Math.PI * 2 / circleSegs, a = 0;
+        double y1 = v1.y, z1 = v1.z, y2 = v2.y, z2 = v2.z, tmp;
+        if (Eps.zero(y1) || Eps.zero(y2)) {
+            if (Eps.eq(z1, z2)) {
+                // disk with no hole
+                boolean rev = Eps.zero(y2);
+                double r = Math.abs(y2 - y1);
+                // disk center
+                int p1 = addVert(0, rev ? y2 : y1, z1);
+                // first point on circumference
+                int p2 = addVert(r, 0, z1);
+                int p3;
+                for (int i=1; i<=circleSegs; ++i) {
+                    a = incAngle * i;
+                    p3 = addVert(r * Math.cos(a), r * Math.sin(a), z1);
+                    if (rev)
+                        addTri(p1, p2, p3);
+                    else
+                        addTri(p1, p3, p2);
+                    p2 = p3;
+                }
+            }
+            else {
+                // cone with apex on the z axis
+            }
+        }
+        else if (Eps.eq(y1, y2)) {
+            // cylinder
+            if (Eps.lt(z2, z1)) {
+                // make z1 < z2
+                tmp = z2;
+                z2 = z1;
+                z1 = tmp;
+            }
+            double r = y1;
+            int p1, p2, p3, p4, n1, n2;
+            Vec3 v = va;
+            for (int i=0; i<circleSegs; ++i) {
+                a = incAngle * i;
+                p1 = addVert(r * Math.cos(a), r * Math.sin(a), z2);
+                getVert(p1, v);
+                p2 = addVert(v.x, v.y, z1);
+                v.z = 0;
+                n1 = addNormal(v.norm());
+                //
+                a = incAngle * (i + 1);
+                p3 = addVert(r * Math.cos(a), r * Math.sin(a), z1);
+                getVert(p3, v);
+                p4 = addVert(v.x, v.y, z2);
+                v.z = 0;
+                n2 = addNormal(v.norm());
+                addTri(p1, p2, p3, n1, n1, n2);
+                addTri(p3, p4, p1, n2, n2, n1);
+            }
+        }
+        else if (z1 == z2) {
+            // disk with a hole in it
+            boolean rev = Eps.lt(y2, y1);
+            double r1 = rev ? y2 : y1; // little r
+            double r2 = rev ? y1 : y2; // big r
+            int p1, p2, p3, p4;
+            for (int i=0; i<=circleSegs; ++i) {
+                a = incAngle * i;
+                double c = Math.cos(a);
+                double s = Math.sin(a);
+                p1 = addVert(r1 * c, r1 * s, z1);
+                p2 = addVert(r2 * c, r2 * s, z1);
+                a = incAngle * (i + 1);
+                c = Math.cos(a);
+                s = Math.sin(a);
+                p3 = addVert(r2 * c, r2 * s, z1);
+                p4 = addVert(r1 * c, r1 * s, z1);
+                if (rev) {
+                    addTri(p1, p2, p3);
+                    addTri(p3, p4, p1);
+                }
+                else {
+                    addTri(p1, p3, p2);
+                    addTri(p1, p4, p3);
+                }
+            }
+        }
+        else {
+            // truncated cone
+            Vec3 lineN = new Vec3(v2, v1).norm();
+            if (Eps.lt(z2, z1)) {
+                // make z1 < z2
+                tmp = z2;
+                z2 = z1;
+                z1 = tmp;
+                tmp = y2;
+                y2 = y1;
+                y1 = tmp;
+                lineN.neg();
+            }
+            Mat4[] m = rotations(circleSegs);
+            double c, s;
+            Vec3 linePerp = new Vec3(-lineN.z, 0, lineN.y);
+            boolean rev = Eps.lt(y2, y1);
+            double r1 = rev ? y2 : y1;
+            double r2 = rev ? y1 : y2;
+            int p1, p2, p3, p4, n1, n2;
+            for (int i=0; i<circleSegs; ++i) {
+                a = incAngle * i;
+                n1 = addNormal(m[i].mulInto(linePerp, va).norm());
+                c = Math.cos(a);
+                s = Math.sin(a);
+                p1 = addVert(r1 * c, r1 * s, z2);
+                p2 = addVert(r2 * c, r2 * s, z1);
+                a = incAngle * (i + 1);
+                n2 = addNormal(m[i + 1].mulInto(linePerp, va).norm());
+                c = Math.cos(a);
+                s = Math.sin(a);
+                p3 = addVert(r2 * c, r2 * s, z1);
+                p4 = addVert(r1 * c, r1 * s, z2);
+                addTri(p1, p2, p3, n1, n1, n2);
+                addTri(p3, p4, p1, n2, n2, n1);
+            }
+        }
+    }
+    /**
+       Add a revolved arc patch.
+       <p>
+       The arc must have a clock-wise orientation.
+       </p>
+       <p>
+       If the mesh's radius is known, the arc is divided so its chords
+       stray no further from it than the mesh's circle segments do from a
+       circle of that radius. Otherwise it's divided every 360 /
+       N_CIRCLE_SEGS degrees.
+       </p>
+       @param circleSegs the number of segments around the axis
+       @param radius the mesh's largest distance from the axis, 0 if it
+       isn't known
+     */
+    public void addRevArc(Arc2 arc, int circleSegs, double radius) {
+        // arc parameters
+        Vec2 cp = arc.centerPt();
+        int segs;
+        if (radius > 0) {
+            double e = Mesh.chordError(radius, circleSegs);
+            double angStep = e >= arc.r
+                ? 180
+                : Math.toDegrees(2 * Math.acos(1 - e / arc.r));
+            segs = Math.max((int)Math.ceil(Math.abs(arc.sweepAngle())
+                                           / angStep), 1);
+        }
+        else {
+            double angStep = 360 / Mesh.N_CIRCLE_SEGS;
+            segs = Math.max((int)(Math.abs(arc.sweepAngle()) / angStep), 3);
+        }
+        double step = arc.sweepAngle() / segs;
+        double sa = arc.startAngle();
+        double a1 = Math.toRadians(sa);
+        double sa1 = Math.sin(a1);
+        double ca1 = Math.cos(a1);
+        double a2, sa2, ca2, x1, y1, x2, y2;
+        // patch parameters
+        double incAngle = Math.PI * 2 / circleSegs, a, c, s;
+        int p1, p2, p3, p4;
+        Vec3 cp3 = new Vec3(cp.y, 0, cp.x), cp3t = new Vec3();
+        Vec3 v = va;
+        int n1, n2, n3, n4;
+        Mat4[] m = rotations(circleSegs);
+        for (int i=1; i<=segs; ++i) {
+            a2 = Math.toRadians(sa + step * i);
+            sa2 = Math.sin(a2);
+            ca2 = Math.cos(a2);
+            x1 = arc.cx + arc.r * ca1;
+            y1 = arc.cy + arc.r * sa1;
+            x2 = arc.cx + arc.r * ca2;
+            y2 = arc.cy + arc.r * sa2;
+            /*
+             x1,y1 and x2,y2 define a line segement along the arc in a
+             clockwise direction looking down the Z- axis. This line seg gets
+             rotated 90+ degrees about the Y axis onto the YZ plane. So the x
+             coord becomes the z coord and the y coord stays the y coord.
+            */
+            for (int j=0; j<circleSegs; ++j) {
+                a = incAngle * j;
+                c = Math.cos(a);
+                s = Math.sin(a);
+                p1 = addVert(y1 * c, y1 * s, x1);
+                p2 = addVert(y2 * c, y2 * s, x2);
+                m[j].mulInto(cp3, cp3t);
+                n1 = newNormal(Vec3.subInto(getVert(p1, v), cp3t, v).norm());
+                n2 = newNormal(Vec3.subInto(getVert(p2, v), cp3t, v).norm());
+                //
+                a = incAngle * (j + 1);
+                c = Math.cos(a);
+                s = Math.sin(a);
+                p3 = addVert(y2 * c, y2 * s, x2);
+                p4 = addVert(y1 * c, y1 * s, x1);
+                m[j + 1].mulInto(cp3, cp3t);
+                n3 = newNormal(Vec3.subInto(getVert(p3, v), cp3t, v).norm());
+                n4 = newNormal(Vec3.subInto(getVert(p4, v), cp3t, v).norm());
+                //
+                addTri(p1, p4, p3, n1, n4, n3);
+                addTri(p3, p2, p1, n3, n2, n1);
+            }
+            a1 = a2;
+            sa1 = sa2;
+            ca1 = ca2;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+  MeshCache.java
+  S. Edward Dolan
+  Thursday, January 4 2024
+*/
+
+package edgrind.geom;
+
+import java.util.Map;
+import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+   A bounded map of keys to meshes, least recently used first out.
+   <p>
+   A Mesh doesn't change once it's built so one can be handed to any number
+   of models. The cache holds meshes until their memorySize() adds up to
+   more than the budget, then drops the ones not asked for the longest. A
+   dropped mesh lives on in the models that have it, it's just built again
+   the next time its key is asked for.
+   </p>
+   <p>
+   A mesh's size counts the views and levels of detail it builds as it's
+   used, so it grows after it's added. The mesh tells the cache, see
+   resize(), and the cache drops others to stay in the budget. A mesh held
+   under more than one key is counted once.
+   </p>
+   <p>
+   Keys need equals() and hashCode() by content, a List of the things the
+   mesh is made from works. It's safe to use from any thread.
+   </p>
+*/
+public class MeshCache {
+    private final Map<Object, Mesh> map
+        = new LinkedHashMap<Object, Mesh>(16, .75f, true);
+    /** Each mesh held to its counted size and the number of its keys. */
+    private final Map<Mesh, long[]> sizes
+        = new IdentityHashMap<Mesh, long[]>();
+    private long budget;
+    private long bytes;
+    private int hits, misses;
+    /**
+       @param budget the most bytes of meshes to hold
+    */
+    public MeshCache(long budget) {
+        this.budget = budget;
+    }
+    /**
+       Get the mesh of the key, making it the most recently used.
+       @return the mesh, or null if it's not in the cache
+    */
+    public synchronized Mesh get(Object key) {
+        Mesh mesh = map.get(key);
+        if (mesh == null)
+            ++misses;
+        else
+            ++hits;
+        return mesh;
+    }
+    /**
+       Add the mesh, dropping the least recently used until the rest fit
+       the budget. A mesh bigger than the budget on its own isn't held.
+    */
+    public synchronized void put(Object key, Mesh mesh) {
+        Mesh old = map.put(key, mesh);
+        if (old != null)
+            release(old);
+        long[] size = sizes.get(mesh);
+        if (size == null) {
+            // set first so growth after the size is taken isn't missed
+            mesh.setCache(this);
+            size = new long[] {mesh.memorySize(), 0};
+            sizes.put(mesh, size);
+            bytes += size[0];
+        }
+        ++size[1];
+        trim();
+    }
+    /**
+       Count a mesh's new size, dropping the least recently used meshes
+       until the rest fit the budget. Sizes only grow, a smaller one is
+       from a call that was passed by another and is ignored.
+    */
+    synchronized void resize(Mesh mesh, long memorySize) {
+        long[] size = sizes.get(mesh);
+        if (size == null || memorySize <= size[0])
+            return;
+        bytes += memorySize - size[0];
+        size[0] = memorySize;
+        trim();
+    }
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+    private void trim() {
+        Iterator<Mesh> it = map.values().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Mesh mesh = it.next();
+            it.remove();
+            release(mesh);
+        }
+    }
+    /**
+       Uncount one of a mesh's keys, the mesh itself once it has none.
+    */
+    private void release(Mesh mesh) {
+        long[] size = sizes.get(mesh);
+        if (--size[1] > 0)
+            return;
+        sizes.remove(mesh);
+        bytes -= size[0];
+        if (mesh.getCache() == this)
+            mesh.setCache(null);
+    }
+    public synchronized void clear() {
+        for (Mesh mesh : sizes.keySet())
+            if (mesh.getCache() == this)
+                mesh.setCache(null);
+        map.clear();
+        sizes.clear();
+        bytes = 0;
+    }
+    /** Get the number of meshes held. */
+    public synchronized int size() {
+        return map.size();
+    }
+    /** Get the bytes of the meshes held. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+    /** Get the number of get() calls that found a mesh. */
+    public synchronized int hits() {
+        return hits;
+    }
+    /** Get the number of get() calls that didn't. */
+    public synchronized int misses() {
+        return misses;
+    }
+}
@@ -19,6 +19,10 @@ public class Model implements Iterable<Mesh> {
     protected Color color = Color.white;
     protected List<Mesh> meshes = new ArrayList<Mesh>();
     protected Mat4 m = new Mat4();
+    /** Incremented when the color, matrix, or mesh list changes. */
+    protected int version;
+    private AABBox bounds;
+    private long boundsVersion;
     public Model() {
     }
     public Model(Color color) {
@@ -29,18 +33,104 @@ public class Model implements Iterable<Mesh> {
     }
     public void setColor(Color color) {
         this.color = color;
+        ++version;
     }
     public AABBox getBBox() {
         return getBBox(new Mat4());
     }
     public AABBox getBBox(Mat4 m) {
+        return getBBox(m, false);
+    }
+    /**
+       Get the box around this model, this model's matrix then m applied.
+       <p>
+       The box is getBounds() transformed, the cost doesn't depend on the
+       size of the meshes. If exact, it's the union of the meshes' exact
+       boxes, see Mesh.getBBox(m, exact).
+       </p>
+       @param m the matrix from the coordinates this model's matrix maps
+       to, to the box's
+    */
+    public AABBox getBBox(Mat4 m, boolean exact) {
+        Mat4 mm = this.m.mul(m);
+        if (!exact)
+            return getBounds().transform(mm);
         AABBox bbox = new AABBox();
-        for (Mesh mesh : meshes)
-            bbox.add(mesh.getBBox(this.m.mul(m)));
+        for (Mesh mesh : meshes) {
+            AABBox b = mesh.getBBox(mm, true);
+            if (b.isValid())
+                bbox.add(b);
+        }
         return bbox;
     }
+    /**
+       Get the box around this model's meshes, in model coordinates.
+       <p>
+       This is the union of the meshes' boxes, see Mesh.getBounds(), rebuilt
+       only when the model's version changes. It's shared, don't modify it.
+       </p>
+    */
+    public synchronized AABBox getBounds() {
+        long v = getVersion();
+        if (bounds == null || v != boundsVersion) {
+            AABBox b = new AABBox();
+            for (Mesh mesh : meshes)
+                if (mesh.getBounds().isValid())
+                    b.add(mesh.getBounds());
+            bounds = b;
+            boundsVersion = v;
+        }
+        return bounds;
+    }
+    /**
+       Find the nearest point where a ray hits this model.
+       <p>
+       The ray is taken into model coordinates by the inverse of this
+       model's matrix and tested against each mesh's BVH. A linear
+       transform doesn't change a ray's parameter, so the hit's t is the
+       same in both.
+       </p>
+       @param p the ray's origin, in the coordinates this model's matrix
+       maps to
+       @param d the ray's direction, it needn't be unit length
+       @return the nearest hit, or null if the ray misses every mesh
+    */
+    public BVH.Hit pick(Vec3 p, Vec3 d) {
+        return pick(p, d, new Mat4());
+    }
+    /**
+       Same as pick(p, d) for an instance of this model.
+       @param m the matrix from the coordinates this model's matrix maps
+       to, to the ray's, see SceneNode.getWorldMatrix()
+    */
+    public BVH.Hit pick(Vec3 p, Vec3 d, Mat4 m) {
+        Mat4 inv = Mat4.inverse(this.m.mul(m));
+        Vec3 mp = inv.mul(p), md = inv.mul(d, true);
+        BVH.Hit best = null;
+        for (Mesh mesh : meshes) {
+            BVH.Hit hit = mesh.getBVH()
+                .intersect(mp, md, best == null ? Double.POSITIVE_INFINITY
+                           : best.t);
+            if (hit != null) {
+                hit.mesh = mesh;
+                best = hit;
+            }
+        }
+        return best;
+    }
     public void add(Mesh mesh) {
         meshes.add(mesh);
+        ++version;
+    }
+    /**
+       Get a number that changes whenever this model's appearance does.
+       <p>
+       It only ever increases. A Mesh doesn't change once it's built, so
+       only the model's own changes count.
+       </p>
+    */
+    public long getVersion() {
+        return version;
     }
     @Override
     public Iterator<Mesh> iterator() {
@@ -51,5 +141,6 @@ public class Model implements Iterable<Mesh> {
     }
     public void setMatrix(Mat4 m) {
         this.m = m;
+        ++version;
     }
 }
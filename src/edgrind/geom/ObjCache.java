@@ -0,0 +1,185 @@
+/*
+  ObjCache.java
+  S. Edward Dolan
+  Friday, January 5 2024
+*/
+
+package edgrind.geom;
+
+import java.io.IOException;
+//
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+
+/**
+   A binary copy of an ObjModel kept next to its .obj file.
+   <p>
+   ObjModel.load() reads a .obj file's cache instead of the file when the
+   cache was written from a file of the same size and modification time, and
+   writes it after parsing the file when it wasn't. The cache is mapped and
+   its arrays copied to the model's in bulk, there's nothing to parse.
+   </p>
+   <p>
+   The format, all little endian:
+   <pre>
+   int    MAGIC
+   int    VERSION
+   long   the .obj file's size
+   long   the .obj file's modification time, ms
+   int    flags, REVERSE_WINDING
+   int    n verts, n norms, n texts, n indices
+   int    0
+   double verts[n verts * 3], norms[n norms * 3], texts[n texts * 2]
+   int    vidxs[n indices], tidxs[n indices], nidxs[n indices]
+   </pre>
+   A cache of any other magic, version, size, time or flags is stale.
+   </p>
+*/
+class ObjCache {
+    /** "EGM1" */
+    static final int MAGIC = 0x314d4745;
+    static final int VERSION = 1;
+    static final int REVERSE_WINDING = 1;
+    static final int HEADER_BYTES = 48;
+    /** The cache file's name is the .obj file's with this added. */
+    static final String SUFFIX = ".mesh";
+    /**
+       Read the model from the cache.
+       @param size, mtime the .obj file's
+       @return the model, or null if the cache doesn't exist, can't be read
+       or is stale
+    */
+    static ObjModel read(Path cache, long size, long mtime,
+                         boolean reverseWinding) {
+        if (!Files.isReadable(cache))
+            return null;
+        try (FileChannel ch = FileChannel.open(cache,
+                                               StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES)
+                return null;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          ch.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION ||
+                buf.getLong() != size || buf.getLong() != mtime ||
+                buf.getInt() != flags(reverseWinding))
+                return null;
+            int nv = buf.getInt(), nn = buf.getInt(), nt = buf.getInt();
+            int ni = buf.getInt();
+            if (nv < 0 || nn < 0 || nt < 0 || ni < 0 ||
+                ch.size() != fileSize(nv, nn, nt, ni))
+                return null;
+            ObjModel model = new ObjModel();
+            model.verts = new double[nv * 3];
+            model.norms = new double[nn * 3];
+            model.texts = new double[nt * 2];
+            model.vidxs = new int[ni];
+            model.tidxs = new int[ni];
+            model.nidxs = new int[ni];
+            buf.position(HEADER_BYTES);
+            get(buf, model.verts);
+            get(buf, model.norms);
+            get(buf, model.texts);
+            get(buf, model.vidxs);
+            get(buf, model.tidxs);
+            get(buf, model.nidxs);
+            model.bbox = ObjModel.bounds(model.verts);
+            return model;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+    /**
+       Write the model to the cache. It's written to a temporary file that
+       then replaces the cache, so a reader never sees half of one.
+       @param size, mtime the .obj file's
+       @return false if it couldn't be written
+    */
+    static boolean write(Path cache, ObjModel model, long size, long mtime,
+                         boolean reverseWinding) {
+        Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel
+                 .open(tmp, StandardOpenOption.CREATE,
+                       StandardOpenOption.WRITE,
+                       StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(MAGIC).putInt(VERSION).putLong(size)
+                    .putLong(mtime).putInt(flags(reverseWinding))
+                    .putInt(model.verts.length / 3)
+                    .putInt(model.norms.length / 3)
+                    .putInt(model.texts.length / 2)
+                    .putInt(model.vidxs.length).putInt(0);
+                put(ch, buf, model.verts);
+                put(ch, buf, model.norms);
+                put(ch, buf, model.texts);
+                put(ch, buf, model.vidxs);
+                put(ch, buf, model.tidxs);
+                put(ch, buf, model.nidxs);
+                flush(ch, buf);
+            }
+            Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            }
+            catch (IOException e2) {
+            }
+            return false;
+        }
+    }
+    private static int flags(boolean reverseWinding) {
+        return reverseWinding ? REVERSE_WINDING : 0;
+    }
+    private static long fileSize(int nv, int nn, int nt, int ni) {
+        return HEADER_BYTES + 8L * (nv * 3L + nn * 3L + nt * 2L) + 4L * 3 * ni;
+    }
+    private static void get(ByteBuffer buf, double[] a) {
+        buf.asDoubleBuffer().get(a);
+        buf.position(buf.position() + a.length * 8);
+    }
+    private static void get(ByteBuffer buf, int[] a) {
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + a.length * 4);
+    }
+    private static void put(FileChannel ch, ByteBuffer buf, double[] a)
+        throws IOException {
+        for (int i=0; i<a.length; ) {
+            if (buf.remaining() < 8)
+                flush(ch, buf);
+            int n = Math.min(a.length - i, buf.remaining() / 8);
+            buf.asDoubleBuffer().put(a, i, n);
+            buf.position(buf.position() + n * 8);
+            i += n;
+        }
+    }
+    private static void put(FileChannel ch, ByteBuffer buf, int[] a)
+        throws IOException {
+        for (int i=0; i<a.length; ) {
+            if (buf.remaining() < 4)
+                flush(ch, buf);
+            int n = Math.min(a.length - i, buf.remaining() / 4);
+            buf.asIntBuffer().put(a, i, n);
+            buf.position(buf.position() + n * 4);
+            i += n;
+        }
+    }
+    private static void flush(FileChannel ch, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+}
@@ -7,69 +7,109 @@
 package edgrind.geom;
 
 import java.util.List;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.AbstractList;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 //
 import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.FileNotFoundException;
+//
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 //
 import edgrind.error.ZeroError;
 
 /**
    A Wavefront .obj file reader and model.
+   <p>
+   The file is read into memory whole and parsed a byte at a time, no
+   Strings are made except for the rare number too long to convert exactly
+   here. Coordinates go to double[]s and face indices to int[]s. A large
+   file is cut into chunks at line breaks and the chunks are parsed in
+   parallel, see read(String, boolean, int). load() reads a binary copy of
+   the model kept next to the file instead, when there's a current one.
+   </p>
  */
 public class ObjModel implements Iterable<Tri3> {
-    List<Vec3> verts;
-    List<Vec3> norms;
-    List<Vec2> texts;
-    List<Integer> vidxs;
-    List<Integer> nidxs;
-    List<Integer> tidxs;
-    public List<Tri3> tris;
+    /** The smallest chunk of a file read() gives a thread of its own. */
+    static final int MIN_CHUNK = 1 << 20;
+    /** x, y, z of each vertex. */
+    double[] verts;
+    /** i, j, k of each unit vertex normal. */
+    double[] norms;
+    /** s, t of each texture coordinate. */
+    double[] texts;
+    /**
+       Zero based indices, three per triangle, into verts, norms and texts.
+       A face without normals or texture coordinates has -1.
+    */
+    int[] vidxs;
+    int[] nidxs;
+    int[] tidxs;
+    /**
+       The triangles, each made when it's asked for. A triangle without
+       normals gets its face normal.
+    */
+    public final List<Tri3> tris = new AbstractList<Tri3>() {
+            @Override
+            public Tri3 get(int t) {
+                if (t < 0 || t >= size())
+                    throw new IndexOutOfBoundsException("triangle " + t);
+                return tri(t);
+            }
+            @Override
+            public int size() {
+                return vidxs.length / 3;
+            }
+        };
     public AABBox bbox;
-    private ObjModel() {
-        verts = new ArrayList<Vec3>();
-        norms = new ArrayList<Vec3>();
-        texts = new ArrayList<Vec2>();
-        vidxs = new ArrayList<Integer>();
-        nidxs = new ArrayList<Integer>();
-        tidxs = new ArrayList<Integer>();
-        tris = new ArrayList<Tri3>();
-        bbox = new AABBox();
+    ObjModel() {
     }
     public AABBox getBBox() {
         return bbox;
     }
     public AABBox getBBox(Mat4 m) {
         List<Vec3> vs = new ArrayList<Vec3>();
-        for (Vec3 v : verts)
-            vs.add(m.mul(v));
+        for (int i=0; i<verts.length; i+=3)
+            vs.add(m.mul(new Vec3(verts[i], verts[i + 1], verts[i + 2])));
         return AABBox.fromVertices(vs);
     }
     public void printStats() {
         System.out.format("n verts: %d\nn norms: %d\nn texts: %d\n",
-                          verts.size(), norms.size(), texts.size());
+                          verts.length / 3, norms.length / 3,
+                          texts.length / 2);
+    }
+    private Tri3 tri(int t) {
+        int k = t * 3;
+        Vec3 v1 = vec(verts, vidxs[k]);
+        Vec3 v2 = vec(verts, vidxs[k + 1]);
+        Vec3 v3 = vec(verts, vidxs[k + 2]);
+        if (nidxs[k] < 0 || nidxs[k + 1] < 0 || nidxs[k + 2] < 0)
+            return new Tri3(v1, v2, v3);
+        return new Tri3(v1, v2, v3, vec(norms, nidxs[k]),
+                        vec(norms, nidxs[k + 1]), vec(norms, nidxs[k + 2]));
+    }
+    private static Vec3 vec(double[] a, int i) {
+        return new Vec3(a[i * 3], a[i * 3 + 1], a[i * 3 + 2]);
     }
     @Override
     public Iterator<Tri3> iterator() {
         return new Iterator<Tri3>() {
-            private int nextIdx = 0;
+            private int nextTri = 0;
             @Override
             public boolean hasNext() {
-                return nextIdx < vidxs.size();
+                return nextTri < tris.size();
             }
             @Override
             public Tri3 next() {
-                Vec3 v1 = verts.get(vidxs.get(nextIdx));
-                Vec3 n1 = norms.get(nidxs.get(nextIdx++));
-                Vec3 v2 = verts.get(vidxs.get(nextIdx));
-                Vec3 n2 = norms.get(nidxs.get(nextIdx++));
-                Vec3 v3 = verts.get(vidxs.get(nextIdx));
-                Vec3 n3 = norms.get(nidxs.get(nextIdx++));
-                return new Tri3(v1, v2, v3, n1, n2, n3);
+                return tri(nextTri++);
             }
             @Override
             public void remove() {
@@ -78,79 +118,442 @@ public class ObjModel implements Iterable<Tri3> {
             }
         };
     }
+    public static ObjModel load(String fileName) {
+        return load(fileName, false);
+    }
+    /**
+       Read a .obj file through its cache, see ObjCache.
+       <p>
+       If the cache is of the file as it is now, the model is read from it.
+       Otherwise the file is read and the cache written for next time.
+       </p>
+       @return the model, or null if the file can't be read
+    */
+    public static ObjModel load(String fileName, boolean reverseWinding) {
+        Path path = new File(fileName).toPath();
+        long size, mtime;
+        try {
+            size = Files.size(path);
+            mtime = Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException e) {
+            System.out.println("failed to open " + fileName);
+            return null;
+        }
+        Path cache = path.resolveSibling(path.getFileName() +
+                                         ObjCache.SUFFIX);
+        ObjModel model = ObjCache.read(cache, size, mtime, reverseWinding);
+        if (model == null) {
+            model = read(fileName, reverseWinding);
+            if (model != null &&
+                !ObjCache.write(cache, model, size, mtime, reverseWinding))
+                System.out.println("failed to write " + cache);
+        }
+        return model;
+    }
     public static ObjModel read(String fileName) {
         return read(fileName, false);
     }
+    /**
+       Read a .obj file, with a thread per MIN_CHUNK bytes up to one per
+       processor.
+    */
+    public static ObjModel read(String fileName, boolean reverseWinding) {
+        long size = new File(fileName).length();
+        int threads = (int)Math.min(Runtime.getRuntime()
+                                    .availableProcessors(),
+                                    Math.max(1, size / MIN_CHUNK));
+        return read(fileName, reverseWinding, threads);
+    }
     /**
        Read a .obj file, building an ObjModel.
 
-       <p> Only vertex, normal, and face data are read.  File format. [x]
-       means the component is optional.
+       <p> Only vertex, normal, texture and face data are read.  File
+       format. [x] means the component is optional.
        <ul>
        <li># ... -- comment</li>
        <li>v x y z [w] -- vertex</li>
        <li>vn i j k -- vertex normal</li>
-       <li>f f/n/t f/n/t f/n/t ... -- polygon face</li>
+       <li>vt s [t] -- texture coordinate</li>
+       <li>f v[/[t][/n]] v[/[t][/n]] v[/[t][/n]] ... -- polygon face</li>
        </ul>
+       A negative index counts back from the last one read. A face of more
+       than three corners is cut into a fan of triangles.
+       </p>
+       <p>
+       The file is cut into one chunk per thread. The chunks' v, vn and vt
+       lines are counted first, so each knows where its own go, then every
+       chunk is parsed at once.
        </p>
+       @param threads the number of chunks to parse in parallel
+       @return the model, or null if the file can't be read
     */
-    public static ObjModel read(String fileName, boolean reverseWinding) {
+    public static ObjModel read(String fileName, boolean reverseWinding,
+                                int threads) {
+        byte[] buf;
+        try {
+            buf = Files.readAllBytes(new File(fileName).toPath());
+        }
+        catch (IOException e) {
+            System.out.println("failed to open " + fileName);
+            return null;
+        }
+        final Parser[] parsers = new Parser[Math.max(1, threads)];
+        int start = 0;
+        for (int i=0; i<parsers.length; ++i) {
+            int end = i == parsers.length - 1 ? buf.length
+                : nextLine(buf, Math.max(start, (int)((long)buf.length *
+                                                      (i + 1) /
+                                                      parsers.length)));
+            parsers[i] = new Parser(buf, start, end, reverseWinding);
+            start = end;
+        }
+        ExecutorService exec = parsers.length == 1 ? null
+            : Executors.newFixedThreadPool(parsers.length);
         try {
-            File f = new File(fileName);
-            BufferedReader r = new BufferedReader(new FileReader(f));
-            String in;
+            // count each chunk's vectors
+            List<Callable<Void>> jobs = new ArrayList<Callable<Void>>();
+            for (final Parser p : parsers)
+                jobs.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            p.count();
+                            return null;
+                        }
+                    });
+            run(exec, jobs);
             ObjModel model = new ObjModel();
-            String[] a;
-            // v, vn, vt, f
-            while ((in = r.readLine()) != null) {
-                if (in.startsWith("#") || // comment
-                    in.isEmpty() ||       // empty string
-                    in.matches("^\\s+$")) // whitespace only
-                    continue;
-                a = in.split("\\s+");
-                // edgrind.Util.printArray(a);
-                // v x y z [w]
-                if (a[0].equals("v")) {
-                    if (reverseWinding)
-                        model.verts.add(new Vec3(Double.parseDouble(a[1]),
-                                                 Double.parseDouble(a[3]),
-                                                 Double.parseDouble(a[2])));
-                    else
-                        model.verts.add(new Vec3(Double.parseDouble(a[1]),
-                                                 Double.parseDouble(a[2]),
-                                                 Double.parseDouble(a[3])));
+            int nv = 0, nn = 0, nt = 0;
+            for (Parser p : parsers) {
+                p.vBase = nv;
+                p.nBase = nn;
+                p.tBase = nt;
+                nv += p.nv;
+                nn += p.nn;
+                nt += p.nt;
+            }
+            model.verts = new double[nv * 3];
+            model.norms = new double[nn * 3];
+            model.texts = new double[nt * 2];
+            // parse each chunk into the model's arrays and its own faces
+            jobs.clear();
+            for (final Parser p : parsers) {
+                p.model = model;
+                jobs.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            p.parse();
+                            return null;
+                        }
+                    });
+            }
+            run(exec, jobs);
+            int n = 0;
+            for (Parser p : parsers)
+                n += p.nIdxs;
+            model.vidxs = new int[n];
+            model.tidxs = new int[n];
+            model.nidxs = new int[n];
+            n = 0;
+            for (Parser p : parsers) {
+                System.arraycopy(p.fv, 0, model.vidxs, n, p.nIdxs);
+                System.arraycopy(p.ft, 0, model.tidxs, n, p.nIdxs);
+                System.arraycopy(p.fn, 0, model.nidxs, n, p.nIdxs);
+                n += p.nIdxs;
+            }
+            model.bbox = bounds(model.verts);
+            return model;
+        }
+        finally {
+            if (exec != null)
+                exec.shutdown();
+        }
+    }
+    /**
+       Run the jobs, on the calling thread if exec is null.
+    */
+    private static void run(ExecutorService exec, List<Callable<Void>> jobs) {
+        try {
+            if (exec == null) {
+                for (Callable<Void> job : jobs)
+                    job.call();
+                return;
+            }
+            for (Future<Void> f : exec.invokeAll(jobs))
+                f.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    /**
+       Get the index just past the next line break at or after i.
+    */
+    private static int nextLine(byte[] buf, int i) {
+        while (i < buf.length && buf[i++] != '\n')
+            ;
+        return i;
+    }
+    static AABBox bounds(double[] v) {
+        AABBox bbox = new AABBox();
+        if (v.length == 0)
+            return bbox;
+        double[] min = Arrays.copyOf(v, 3), max = Arrays.copyOf(v, 3);
+        for (int i=3; i<v.length; i+=3)
+            for (int c=0; c<3; ++c) {
+                min[c] = Math.min(min[c], v[i + c]);
+                max[c] = Math.max(max[c], v[i + c]);
+            }
+        bbox.add(new Vec3(min[0], min[1], min[2]));
+        bbox.add(new Vec3(max[0], max[1], max[2]));
+        return bbox;
+    }
+    /**
+       Parse the lines of one chunk of a file.
+    */
+    private static class Parser {
+        /** Exact powers of ten, a double holds each without round off. */
+        static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+        final byte[] buf;
+        final int start, end;
+        final boolean reverseWinding;
+        /** Where the parser is in buf. */
+        int p;
+        ObjModel model;
+        /** The chunk's v, vn and vt counts, and the counts before it. */
+        int nv, nn, nt, vBase, nBase, tBase;
+        /** The chunk's face indices, nIdxs of each. */
+        int[] fv = new int[96], ft = new int[96], fn = new int[96];
+        int nIdxs;
+        /** The corners of the face being parsed. */
+        int[] cv = new int[8], ct = new int[8], cn = new int[8];
+        Parser(byte[] buf, int start, int end, boolean reverseWinding) {
+            this.buf = buf;
+            this.start = start;
+            this.end = end;
+            this.reverseWinding = reverseWinding;
+        }
+        /**
+           Count the v, vn and vt lines.
+        */
+        void count() {
+            for (p=start; p<end; p=nextLine(buf, p))
+                switch (keyword()) {
+                case 'v': ++nv; break;
+                case 'n': ++nn; break;
+                case 't': ++nt; break;
+                }
+        }
+        /**
+           Skip the line's leading space and parse its keyword.
+           @return 'v', 'n', 't' or 'f' for v, vn, vt or f, 0 for any other
+           line
+        */
+        private int keyword() {
+            skipSpace();
+            int k = p;
+            while (p < end && !isSpace(buf[p]) && !isEol(buf[p]))
+                ++p;
+            int len = p - k;
+            if (len == 1 && (buf[k] == 'v' || buf[k] == 'f'))
+                return buf[k];
+            if (len == 2 && buf[k] == 'v' &&
+                (buf[k + 1] == 'n' || buf[k + 1] == 't'))
+                return buf[k + 1];
+            return 0;
+        }
+        /**
+           Parse the chunk, count() must have been called and the model's
+           vector arrays made.
+        */
+        void parse() {
+            int iv = vBase, in = nBase, it = tBase;
+            for (p=start; p<end; p=nextLine(buf, p))
+                switch (keyword()) {
+                case 'v': {
+                    double x = number(), y = number(), z = number();
+                    double[] v = model.verts;
+                    v[iv * 3] = x;
+                    v[iv * 3 + 1] = reverseWinding ? z : y;
+                    v[iv * 3 + 2] = reverseWinding ? y : z;
+                    ++iv;
+                    break;
+                }
+                case 'n': {
+                    double x = number(), y = number(), z = number();
+                    double m = Math.sqrt(x * x + y * y + z * z);
+                    if (m == 0)
+                        throw new ZeroError("Vec3 magnitude is zero");
+                    double[] n = model.norms;
+                    n[in * 3] = x / m;
+                    n[in * 3 + 1] = y / m;
+                    n[in * 3 + 2] = z / m;
+                    ++in;
+                    break;
                 }
-                // vn i j k
-                else if (a[0].equals("vn"))
-                    model.norms.add(new Vec3(Double.parseDouble(a[1]),
-                                             Double.parseDouble(a[2]),
-                                             Double.parseDouble(a[3]))
-                                    .norm());
-                // vt s t
-                else if (a[0].equals("vt"))
-                    model.texts.add(new Vec2(Double.parseDouble(a[1]),
-                                             Double.parseDouble(a[2])));
-                // f v/t/n v/t/n v/t/n
-                else if (a[0].equals("f")) {
-                    for (int i=1; i<a.length; ++i) {
-                        String[] idxs = a[i].split("/");
-                        model.vidxs.add(new Integer(Integer
-                                                    .parseInt(idxs[0]) - 1));
-                        model.tidxs.add(new Integer(Integer
-                                                    .parseInt(idxs[1]) - 1));
-                        model.nidxs.add(new Integer(Integer
-                                                    .parseInt(idxs[2]) - 1));
+                case 't': {
+                    double s = number();
+                    skipSpace();
+                    double t = p < end && !isEol(buf[p]) ? number() : 0;
+                    model.texts[it * 2] = s;
+                    model.texts[it * 2 + 1] = t;
+                    ++it;
+                    break;
+                }
+                case 'f':
+                    face(iv, in, it);
+                    break;
+                }
+        }
+        /**
+           Parse a face's corners and add its triangles.
+           @param iv, in, it the number of vectors read so far, for
+           negative indices
+        */
+        private void face(int iv, int in, int it) {
+            int n = 0;
+            while (true) {
+                skipSpace();
+                if (p >= end || isEol(buf[p]) || buf[p] == '#')
+                    break;
+                if (n == cv.length) {
+                    cv = Arrays.copyOf(cv, n * 2);
+                    ct = Arrays.copyOf(ct, n * 2);
+                    cn = Arrays.copyOf(cn, n * 2);
+                }
+                cv[n] = index(iv);
+                ct[n] = cn[n] = -1;
+                if (p < end && buf[p] == '/') {
+                    ++p;
+                    if (p < end && buf[p] != '/' && !isSpace(buf[p]) &&
+                        !isEol(buf[p]))
+                        ct[n] = index(it);
+                    if (p < end && buf[p] == '/') {
+                        ++p;
+                        cn[n] = index(in);
                     }
                 }
+                ++n;
+            }
+            for (int i=1; i<n - 1; ++i) {
+                add(0);
+                add(i);
+                add(i + 1);
             }
-            model.bbox = AABBox.fromVertices(model.verts);
-            for (Tri3 t : model)
-                model.tris.add(t);
-            return model;
         }
-        catch (IOException e) {
-            System.out.println("failed to open " + fileName);
-            return null;
+        private void add(int corner) {
+            if (nIdxs == fv.length) {
+                fv = Arrays.copyOf(fv, nIdxs * 2);
+                ft = Arrays.copyOf(ft, nIdxs * 2);
+                fn = Arrays.copyOf(fn, nIdxs * 2);
+            }
+            fv[nIdxs] = cv[corner];
+            ft[nIdxs] = ct[corner];
+            fn[nIdxs++] = cn[corner];
+        }
+        /**
+           Parse a one based index, or a negative one counting back from
+           count.
+           @return the zero based index
+        */
+        private int index(int count) {
+            boolean neg = p < end && buf[p] == '-';
+            if (neg)
+                ++p;
+            int s = p, i = 0;
+            while (p < end && buf[p] >= '0' && buf[p] <= '9')
+                i = i * 10 + buf[p++] - '0';
+            if (p == s)
+                throw new NumberFormatException("bad .obj index: " + token(s));
+            return neg ? count - i : i - 1;
+        }
+        /**
+           Parse the next number on the line.
+           <p>
+           Up to 18 digits are gathered into a long. If it's no more than
+           2^53, and the power of ten no more than 22, both are exact
+           doubles and one multiply or divide rounds the value just as
+           Double.parseDouble() does. Anything else is handed to
+           Double.parseDouble().
+           </p>
+        */
+        private double number() {
+            skipSpace();
+            int s = p;
+            boolean neg = false;
+            if (p < end && (buf[p] == '-' || buf[p] == '+'))
+                neg = buf[p++] == '-';
+            long mant = 0;
+            int digits = 0, exp = 0;
+            boolean any = false;
+            for (; p < end && buf[p] >= '0' && buf[p] <= '9'; ++p) {
+                any = true;
+                if (digits < 18) {
+                    mant = mant * 10 + buf[p] - '0';
+                    if (mant != 0)
+                        ++digits;
+                }
+                else
+                    ++exp;
+            }
+            if (p < end && buf[p] == '.')
+                for (++p; p < end && buf[p] >= '0' && buf[p] <= '9'; ++p) {
+                    any = true;
+                    if (digits < 18) {
+                        mant = mant * 10 + buf[p] - '0';
+                        if (mant != 0)
+                            ++digits;
+                        --exp;
+                    }
+                }
+            if (any && p < end && (buf[p] == 'e' || buf[p] == 'E')) {
+                ++p;
+                boolean eneg = false;
+                if (p < end && (buf[p] == '-' || buf[p] == '+'))
+                    eneg = buf[p++] == '-';
+                int e = 0, es = p;
+                while (p < end && buf[p] >= '0' && buf[p] <= '9')
+                    e = Math.min(e * 10 + buf[p++] - '0', 100000);
+                if (p == es)
+                    any = false;
+                exp += eneg ? -e : e;
+            }
+            if (!any || (p < end && !isSpace(buf[p]) && !isEol(buf[p])) ||
+                mant > (1L << 53) || exp > 22 || exp < -22) {
+                p = s;
+                while (p < end && !isSpace(buf[p]) && !isEol(buf[p]))
+                    ++p;
+                return Double.parseDouble(token(s));
+            }
+            double d = exp >= 0 ? mant * POW10[exp] : mant / POW10[-exp];
+            return neg ? -d : d;
+        }
+        private String token(int s) {
+            int e = s;
+            while (e < end && !isSpace(buf[e]) && !isEol(buf[e]))
+                ++e;
+            return new String(buf, s, e - s, StandardCharsets.US_ASCII);
+        }
+        private void skipSpace() {
+            while (p < end && isSpace(buf[p]))
+                ++p;
+        }
+        private static boolean isSpace(byte c) {
+            return c == ' ' || c == '\t';
+        }
+        private static boolean isEol(byte c) {
+            return c == '\n' || c == '\r';
         }
     }
 }
@@ -0,0 +1,137 @@
+/*
+  SceneNode.java
+  S. Edward Dolan
+  Sunday, December 31 2023
+*/
+
+package edgrind.geom;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+   A node of a scene graph, placing an optional Model relative to its
+   parent.
+   <p>
+   A node's matrix maps its coordinates to its parent's, so moving a node
+   moves everything below it. A Model may be referenced by any number of
+   nodes, each draws it at its own place. The model's own matrix is applied
+   first, see getInstanceMatrix(). A shared model must not be changed, the
+   change would show up at every node that references it.
+   </p>
+*/
+public class SceneNode implements Iterable<SceneNode> {
+    protected String name;
+    protected SceneNode parent;
+    protected List<SceneNode> children = new ArrayList<SceneNode>();
+    protected Mat4 m = new Mat4();
+    protected Model model;
+    public SceneNode(String name) {
+        this(name, null);
+    }
+    public SceneNode(String name, Model model) {
+        this.name = name;
+        this.model = model;
+    }
+    public String getName() {
+        return name;
+    }
+    public SceneNode getParent() {
+        return parent;
+    }
+    /**
+       Add a child, taking it from its old parent if it has one.
+       @return the child
+    */
+    public SceneNode add(SceneNode child) {
+        if (child.parent != null)
+            child.parent.children.remove(child);
+        child.parent = this;
+        children.add(child);
+        return child;
+    }
+    public Model getModel() {
+        return model;
+    }
+    public void setModel(Model model) {
+        this.model = model;
+    }
+    /** Get the matrix from this node's coordinates to its parent's. */
+    public Mat4 getMatrix() {
+        return m;
+    }
+    public void setMatrix(Mat4 m) {
+        this.m = m;
+    }
+    /**
+       Get the matrix from this node's coordinates to the root's.
+    */
+    public Mat4 getWorldMatrix() {
+        return parent == null ? m : m.mul(parent.getWorldMatrix());
+    }
+    /**
+       Get the matrix that places this node's model in the root's
+       coordinates, the model's matrix then the world matrix.
+       @return the matrix, or null if this node has no model
+    */
+    public Mat4 getInstanceMatrix() {
+        return model == null ? null : model.getMatrix().mul(getWorldMatrix());
+    }
+    /**
+       Get this node and every node below it, depth first, parents before
+       their children.
+    */
+    public List<SceneNode> flatten() {
+        List<SceneNode> nodes = new ArrayList<SceneNode>();
+        flatten(nodes);
+        return nodes;
+    }
+    private void flatten(List<SceneNode> nodes) {
+        nodes.add(this);
+        for (SceneNode child : children)
+            child.flatten(nodes);
+    }
+    /**
+       Find if a model is referenced by this node or any node below it.
+    */
+    public boolean references(Model model) {
+        if (this.model == model)
+            return true;
+        for (SceneNode child : children)
+            if (child.references(model))
+                return true;
+        return false;
+    }
+    /**
+       Get the box around this node's model and every model below it.
+       @param m the matrix from the root's coordinates to the box's
+    */
+    public AABBox getBBox(Mat4 m) {
+        return getBBox(m, false);
+    }
+    /**
+       Same as getBBox(m), with each model's box found by
+       Model.getBBox(m, exact).
+    */
+    public AABBox getBBox(Mat4 m, boolean exact) {
+        AABBox bbox = new AABBox();
+        for (SceneNode node : flatten()) {
+            if (node.model == null)
+                continue;
+            AABBox b = node.model.getBBox(node.getWorldMatrix().mul(m),
+                                          exact);
+            if (b.isValid())
+                bbox.add(b);
+        }
+        return bbox;
+    }
+    @Override
+    public Iterator<SceneNode> iterator() {
+        return children.iterator();
+    }
+    @Override
+    public String toString() {
+        return name;
+    }
+}
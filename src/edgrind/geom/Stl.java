@@ -0,0 +1,442 @@
+/*
+  Stl.java
+  S. Edward Dolan
+  Saturday, January 6 2024
+*/
+
+package edgrind.geom;
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+//
+import java.io.File;
+import java.io.Writer;
+import java.io.IOException;
+//
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+//
+import edgrind.error.IllegalArgumentError;
+
+/**
+   Read and write STL files, binary and ASCII.
+   <p>
+   A binary file is mapped and its triangles read straight into the arrays
+   of a Mesh, there are no objects made per triangle. Corners with the very
+   same coordinates are welded into one vertex, with an open addressed hash
+   table of vertex indices. Each triangle gets the file's facet normal, or
+   its own face normal if the file's is zero.
+   </p>
+   <p>
+   Writing streams the triangles of a model, or of every model in a scene,
+   to a channel, each vertex transformed once to the coordinates written.
+   </p>
+   <p>
+   Binary format, all little endian:
+   <pre>
+   byte[80]  header, ignored
+   int       n triangles
+   n * {
+     float[3] normal
+     float[3] vertex 1, 2, 3
+     short    attribute byte count, 0
+   }
+   </pre>
+   </p>
+*/
+public class Stl {
+    static final int HEADER_BYTES = 84;
+    static final int TRI_BYTES = 50;
+    /**
+       Read an STL file, binary or ASCII.
+       <p>
+       The file is binary if its size is what the triangle count in its
+       header says, otherwise it must start with "solid".
+       </p>
+       @return the mesh, or null if the file can't be read
+       @throws IllegalArgumentError if the file isn't an STL file
+    */
+    public static Mesh read(String fileName) {
+        Path path = new File(fileName).toPath();
+        try (FileChannel ch = FileChannel.open(path,
+                                               StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentError(fileName + " is too large");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (size >= HEADER_BYTES &&
+                size == HEADER_BYTES + TRI_BYTES *
+                (buf.getInt(80) & 0xffffffffL))
+                return readBinary(buf);
+            return readAscii(buf, fileName);
+        }
+        catch (IOException e) {
+            System.out.println("failed to open " + fileName);
+            return null;
+        }
+    }
+    private static Mesh readBinary(ByteBuffer buf) {
+        int n = buf.getInt(80);
+        Welder w = new Welder(n);
+        double[] f = new double[12];
+        for (int t=0, p=HEADER_BYTES; t<n; ++t, p+=TRI_BYTES) {
+            for (int i=0; i<12; ++i)
+                f[i] = buf.getFloat(p + i * 4);
+            w.facet(f);
+        }
+        return w.build();
+    }
+    /**
+       <pre>
+       solid [name]
+         facet normal ni nj nk
+           outer loop
+             vertex x y z
+             vertex x y z
+             vertex x y z
+           endloop
+         endfacet
+         ...
+       endsolid [name]
+       </pre>
+    */
+    private static Mesh readAscii(ByteBuffer buf, String fileName) {
+        Tokens in = new Tokens(buf);
+        if (!"solid".equals(in.next()))
+            throw new IllegalArgumentError(fileName +
+                                           " is not an STL file");
+        Welder w = new Welder(1024);
+        double[] f = new double[12];
+        int nv = -1;
+        for (String tok = in.next(); tok != null; tok = in.next()) {
+            if (tok.equals("facet")) {
+                if (!"normal".equals(in.next()))
+                    throw new IllegalArgumentError("expected normal in " +
+                                                   fileName);
+                for (int i=0; i<3; ++i)
+                    f[i] = in.nextDouble();
+                nv = 0;
+            }
+            else if (tok.equals("vertex")) {
+                if (nv < 0 || nv == 3)
+                    throw new IllegalArgumentError("vertex outside facet " +
+                                                   "in " + fileName);
+                for (int i=0; i<3; ++i)
+                    f[3 + nv * 3 + i] = in.nextDouble();
+                ++nv;
+            }
+            else if (tok.equals("endfacet")) {
+                if (nv != 3)
+                    throw new IllegalArgumentError("facet of " + nv +
+                                                   " vertices in " +
+                                                   fileName);
+                w.facet(f);
+                nv = -1;
+            }
+            else if (tok.equals("endsolid"))
+                break;
+        }
+        return w.build();
+    }
+    /**
+       Write a model's meshes to a binary STL file, in the coordinates the
+       model's matrix maps to.
+       @return false if the file couldn't be written
+    */
+    public static boolean write(String fileName, Model model) {
+        return write(fileName, new SceneNode(new File(fileName).getName(),
+                                             model), false);
+    }
+    /**
+       Write the meshes of every model in a scene to an STL file, in the
+       coordinates of the scene's root.
+       @param ascii write ASCII instead of binary
+       @return false if the file couldn't be written
+    */
+    public static boolean write(String fileName, SceneNode root,
+                                boolean ascii) {
+        List<Mesh> meshes = new ArrayList<Mesh>();
+        List<Mat4> mats = new ArrayList<Mat4>();
+        long n = 0;
+        for (SceneNode node : root.flatten()) {
+            if (node.getModel() == null)
+                continue;
+            Mat4 m = node.getInstanceMatrix();
+            for (Mesh mesh : node.getModel()) {
+                meshes.add(mesh);
+                mats.add(m);
+                n += mesh.nTris();
+            }
+        }
+        if (n > 0xffffffffL)
+            throw new IllegalArgumentError("too many triangles for STL: " +
+                                           n);
+        Path path = new File(fileName).toPath();
+        try {
+            if (ascii)
+                writeAscii(path, root.getName(), meshes, mats);
+            else
+                writeBinary(path, root.getName(), meshes, mats, (int)n);
+            return true;
+        }
+        catch (IOException e) {
+            System.out.println("failed to write " + fileName);
+            return false;
+        }
+    }
+    private static void writeBinary(Path path, String name,
+                                    List<Mesh> meshes, List<Mat4> mats,
+                                    int n) throws IOException {
+        try (FileChannel ch = FileChannel
+             .open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(TRI_BYTES * 1024)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            byte[] header = Arrays.copyOf(("edgrind " + name)
+                                          .getBytes(StandardCharsets.US_ASCII),
+                                          80);
+            buf.put(header).putInt(n);
+            double[] f = new double[12];
+            for (int i=0; i<meshes.size(); ++i) {
+                Mesh mesh = meshes.get(i);
+                double[] v = transform(mesh.verts, mats.get(i));
+                for (int t=0; t<mesh.nTris(); ++t) {
+                    facet(v, mesh.vidxs, t, f);
+                    if (buf.remaining() < TRI_BYTES)
+                        flush(ch, buf);
+                    for (int j=0; j<12; ++j)
+                        buf.putFloat((float)f[j]);
+                    buf.putShort((short)0);
+                }
+            }
+            flush(ch, buf);
+        }
+    }
+    private static void writeAscii(Path path, String name,
+                                   List<Mesh> meshes, List<Mat4> mats)
+        throws IOException {
+        try (Writer out = Files.newBufferedWriter(path,
+                                                  StandardCharsets.US_ASCII)) {
+            out.write("solid " + name + "\n");
+            double[] f = new double[12];
+            for (int i=0; i<meshes.size(); ++i) {
+                Mesh mesh = meshes.get(i);
+                double[] v = transform(mesh.verts, mats.get(i));
+                for (int t=0; t<mesh.nTris(); ++t) {
+                    facet(v, mesh.vidxs, t, f);
+                    out.write("  facet normal " + f[0] + " " + f[1] + " " +
+                              f[2] + "\n    outer loop\n");
+                    for (int j=3; j<12; j+=3)
+                        out.write("      vertex " + f[j] + " " + f[j + 1] +
+                                  " " + f[j + 2] + "\n");
+                    out.write("    endloop\n  endfacet\n");
+                }
+            }
+            out.write("endsolid " + name + "\n");
+        }
+    }
+    /**
+       Get the vertices, x, y, z triples, transformed by m.
+    */
+    private static double[] transform(double[] verts, Mat4 m) {
+        double[] v = new double[verts.length];
+        for (int i=0; i<verts.length; i+=3) {
+            Vec3 p = m.mul(new Vec3(verts[i], verts[i + 1], verts[i + 2]));
+            v[i] = p.x;
+            v[i + 1] = p.y;
+            v[i + 2] = p.z;
+        }
+        return v;
+    }
+    /**
+       Get a triangle's facet as STL has it, its unit face normal then its
+       three vertices. A degenerate triangle's normal is zero.
+    */
+    private static void facet(double[] v, int[] vidxs, int t, double[] f) {
+        for (int i=0; i<3; ++i) {
+            int k = vidxs[t * 3 + i] * 3;
+            f[3 + i * 3] = v[k];
+            f[4 + i * 3] = v[k + 1];
+            f[5 + i * 3] = v[k + 2];
+        }
+        faceNormal(f);
+    }
+    /**
+       Set f[0..2] to the unit normal of the triangle in f[3..11], zero if
+       the triangle has no area.
+    */
+    private static void faceNormal(double[] f) {
+        double ux = f[6] - f[3], uy = f[7] - f[4], uz = f[8] - f[5];
+        double vx = f[9] - f[3], vy = f[10] - f[4], vz = f[11] - f[5];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double m = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (m == 0) {
+            f[0] = f[1] = f[2] = 0;
+            return;
+        }
+        f[0] = nx / m;
+        f[1] = ny / m;
+        f[2] = nz / m;
+    }
+    private static void flush(FileChannel ch, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+    /**
+       Build a mesh of facets, welding corners of the same coordinates.
+    */
+    private static class Welder {
+        double[] verts, norms;
+        int[] vidxs, nidxs;
+        int nVerts, nTris;
+        /** Vertex index + 1 in each slot, 0 if empty. */
+        int[] table;
+        /**
+           The vertices last found, by hash. A file's triangles are mostly
+           next to the ones before them, so most corners are found here
+           without a trip through the far larger table.
+        */
+        int[] recent = new int[4096];
+        Welder(int nTris) {
+            int n = Math.max(nTris, 16);
+            // a closed mesh has about half as many vertices as triangles
+            verts = new double[n / 2 * 3];
+            norms = new double[n * 3];
+            vidxs = new int[n * 3];
+            nidxs = new int[n * 3];
+            table = new int[Integer.highestOneBit(n) * 2];
+        }
+        /**
+           Add a facet, its normal then its three vertices. A zero normal is
+           replaced by the face normal.
+        */
+        void facet(double[] f) {
+            if (nTris * 3 == vidxs.length) {
+                vidxs = Arrays.copyOf(vidxs, vidxs.length * 2);
+                nidxs = Arrays.copyOf(nidxs, nidxs.length * 2);
+                norms = Arrays.copyOf(norms, norms.length * 2);
+            }
+            double m = Math.sqrt(f[0] * f[0] + f[1] * f[1] + f[2] * f[2]);
+            if (m == 0)
+                faceNormal(f);
+            else
+                for (int i=0; i<3; ++i)
+                    f[i] /= m;
+            int k = nTris * 3;
+            for (int i=0; i<3; ++i) {
+                norms[k + i] = f[i];
+                vidxs[k + i] = vertex(f[3 + i * 3], f[4 + i * 3],
+                                      f[5 + i * 3]);
+                nidxs[k + i] = nTris;
+            }
+            ++nTris;
+        }
+        /**
+           Get the index of the vertex at x, y, z, adding it if it's new.
+        */
+        private int vertex(double x, double y, double z) {
+            // -0 and 0 are the same vertex
+            x += 0.0;
+            y += 0.0;
+            z += 0.0;
+            int h = hash(x, y, z), r = h & (recent.length - 1);
+            int i = recent[r] - 1;
+            if (i >= 0 && verts[i * 3] == x && verts[i * 3 + 1] == y &&
+                verts[i * 3 + 2] == z)
+                return i;
+            int mask = table.length - 1;
+            for (int s=h & mask; ; s=(s + 1) & mask) {
+                i = table[s] - 1;
+                if (i < 0) {
+                    if (nVerts * 3 == verts.length)
+                        verts = Arrays.copyOf(verts, verts.length * 2);
+                    verts[nVerts * 3] = x;
+                    verts[nVerts * 3 + 1] = y;
+                    verts[nVerts * 3 + 2] = z;
+                    table[s] = recent[r] = nVerts + 1;
+                    if (++nVerts * 2 > table.length)
+                        rehash();
+                    return nVerts - 1;
+                }
+                if (verts[i * 3] == x && verts[i * 3 + 1] == y &&
+                    verts[i * 3 + 2] == z) {
+                    recent[r] = i + 1;
+                    return i;
+                }
+            }
+        }
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int i=0; i<nVerts; ++i) {
+                int s = hash(verts[i * 3], verts[i * 3 + 1],
+                             verts[i * 3 + 2]) & mask;
+                while (table[s] != 0)
+                    s = (s + 1) & mask;
+                table[s] = i + 1;
+            }
+        }
+        private static int hash(double x, double y, double z) {
+            long h = Double.doubleToLongBits(x) * 0x9e3779b97f4a7c15L;
+            h = (h ^ Double.doubleToLongBits(y)) * 0x9e3779b97f4a7c15L;
+            h = (h ^ Double.doubleToLongBits(z)) * 0x9e3779b97f4a7c15L;
+            return (int)(h ^ (h >>> 32));
+        }
+        Mesh build() {
+            return new Mesh(trim(verts, nVerts * 3), trim(norms, nTris * 3),
+                            trim(vidxs, nTris * 3), trim(nidxs, nTris * 3));
+        }
+        private static double[] trim(double[] a, int n) {
+            return a.length == n ? a : Arrays.copyOf(a, n);
+        }
+        private static int[] trim(int[] a, int n) {
+            return a.length == n ? a : Arrays.copyOf(a, n);
+        }
+    }
+    /**
+       Split an ASCII file into tokens at whitespace.
+    */
+    private static class Tokens {
+        final ByteBuffer buf;
+        int p;
+        Tokens(ByteBuffer buf) {
+            this.buf = buf;
+        }
+        /** @return the next token, or null at the end of the file */
+        String next() {
+            int end = buf.limit();
+            while (p < end && buf.get(p) <= ' ')
+                ++p;
+            if (p == end)
+                return null;
+            int s = p;
+            while (p < end && buf.get(p) > ' ')
+                ++p;
+            byte[] b = new byte[p - s];
+            for (int i=0; i<b.length; ++i)
+                b[i] = buf.get(s + i);
+            return new String(b, StandardCharsets.US_ASCII);
+        }
+        double nextDouble() {
+            String tok = next();
+            if (tok == null)
+                throw new IllegalArgumentError("expected a number at the " +
+                                               "end of the file");
+            return Double.parseDouble(tok);
+        }
+    }
+}
@@ -22,10 +22,9 @@ import edgrind.error.ZeroError;
  */
 public class Vec2 {
     /**
-       The value used when testing equalty with another Vec2. Initially set to
-       1e-8.
+       The value used when testing equalty with another Vec2, 1e-8.
      */
-    public double EPSILON = 1e-8;
+    public static final double EPSILON = 1e-8;
     /** The x component. */    
     public double x;
     /** The y component. */
@@ -212,6 +211,29 @@ public class Vec2 {
         return new Vec2(p.x, p.y).xform(m);
     }
     public static double distance(Vec2 p1, Vec2 p2) {
-        return new Vec2(p1, p2).mag();
+        double dx = p2.x - p1.x, dy = p2.y - p1.y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    /**
+       Same as add(v1, v2), the result written to out, which may be v1 or
+       v2.
+       @return out
+    */
+    public static Vec2 addInto(Vec2 v1, Vec2 v2, Vec2 out) {
+        return out.set(v1.x + v2.x, v1.y + v2.y);
+    }
+    /**
+       Same as sub(v1, v2), the result written to out.
+       @return out
+    */
+    public static Vec2 subInto(Vec2 v1, Vec2 v2, Vec2 out) {
+        return out.set(v1.x - v2.x, v1.y - v2.y);
+    }
+    /**
+       Same as mul(v, s), the result written to out.
+       @return out
+    */
+    public static Vec2 mulInto(Vec2 v, double s, Vec2 out) {
+        return out.set(v.x * s, v.y * s);
     }
 }
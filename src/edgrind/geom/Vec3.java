@@ -10,10 +10,17 @@ import edgrind.error.ZeroError;
 
 /**
    A 3d point or vector.
+   <p>
+   The instance methods that return this, sub(), mul(), add(), norm() and
+   so on, work in place. The static methods return a new Vec3, except the
+   ...Into() ones, which write their result to a Vec3 the caller gives and
+   return it. A loop can keep a few scratch vectors and do its arithmetic
+   without making any.
+   </p>
  */
 public class Vec3 {
     /** For Vec3 equality test. The double 1e-8. */
-    public double EPSILON = 1e-8; 
+    public static final double EPSILON = 1e-8;
     public double x, y, z;
     /**
        Construct a vector with all components equal to 0.0.
@@ -219,5 +226,43 @@ public class Vec3 {
     public static Vec3 neg(Vec3 v) {
         return Vec3.mul(v, -1);
     }
+    /**
+       Find the sum of the given vectors.
+       @param out the result, may be v1 or v2
+       @return out
+     */
+    public static Vec3 addInto(Vec3 v1, Vec3 v2, Vec3 out) {
+        out.set(v1.x + v2.x, v1.y + v2.y, v1.z + v2.z);
+        return out;
+    }
+    /**
+       Find the difference of the given vectors (v1 - v2).
+       @param out the result, may be v1 or v2
+       @return out
+     */
+    public static Vec3 subInto(Vec3 v1, Vec3 v2, Vec3 out) {
+        out.set(v1.x - v2.x, v1.y - v2.y, v1.z - v2.z);
+        return out;
+    }
+    /**
+       Find the product of the given vector and scalar (v * s).
+       @param out the result, may be v
+       @return out
+     */
+    public static Vec3 mulInto(Vec3 v, double s, Vec3 out) {
+        out.set(v.x * s, v.y * s, v.z * s);
+        return out;
+    }
+    /**
+       Find the cross product of the given vectors (v1 x v2).
+       @param out the result, may be v1 or v2
+       @return out
+     */
+    public static Vec3 crossInto(Vec3 v1, Vec3 v2, Vec3 out) {
+        out.set(v1.y * v2.z - v1.z * v2.y,
+                v1.z * v2.x - v1.x * v2.z,
+                v1.x * v2.y - v1.y * v2.x);
+        return out;
+    }
 }
 
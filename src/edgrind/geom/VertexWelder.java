@@ -0,0 +1,104 @@
+/*
+  VertexWelder.java
+  S. Edward Dolan
+  Tuesday, January 2 2024
+*/
+
+package edgrind.geom;
+
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+
+/**
+   Find a buffer's vector that equals another, without a linear search.
+   <p>
+   MeshBuilder uses one for its vertices and one for its normals. The
+   vectors are x, y, z triples in a double[] the caller owns, this only
+   indexes them. Vectors are equal when each component is within
+   Eps.EPSILON, as Vec3.equals() compares. Space is cut into cells EPSILON
+   on a side and each indexed vector is hashed by the cell it's in. A vector
+   equal to another is in the same cell or one of the 26 around it, so
+   finding it takes 27 hash lookups whatever the size of the buffer.
+   </p>
+   <p>
+   When more than one vector is equal, the one with the lowest index is
+   found, which is what a linear search would find.
+   </p>
+*/
+class VertexWelder {
+    /** Cell key to the indices of the vectors in that cell. */
+    private final Map<Long, List<Integer>> cells
+        = new HashMap<Long, List<Integer>>();
+    /**
+       Find an indexed vector equal to x, y, z.
+       @param coords the buffer the indices refer to
+       @return its index, or -1 if there's none
+    */
+    int find(double[] coords, double x, double y, double z) {
+        long cx = cell(x), cy = cell(y), cz = cell(z);
+        int found = -1;
+        for (long i=cx - 1; i<=cx + 1; ++i)
+            for (long j=cy - 1; j<=cy + 1; ++j)
+                for (long k=cz - 1; k<=cz + 1; ++k) {
+                    List<Integer> idxs = cells.get(key(i, j, k));
+                    if (idxs == null)
+                        continue;
+                    for (int idx : idxs) {
+                        int c = idx * 3;
+                        if ((found == -1 || idx < found) &&
+                            Math.abs(coords[c] - x) <= Eps.EPSILON &&
+                            Math.abs(coords[c + 1] - y) <= Eps.EPSILON &&
+                            Math.abs(coords[c + 2] - z) <= Eps.EPSILON)
+                            found = idx;
+                    }
+                }
+        return found;
+    }
+    /**
+       Index the vector at x, y, z.
+    */
+    void insert(int idx, double x, double y, double z) {
+        Long key = key(cell(x), cell(y), cell(z));
+        List<Integer> idxs = cells.get(key);
+        if (idxs == null)
+            cells.put(key, idxs = new ArrayList<Integer>(2));
+        idxs.add(idx);
+    }
+    /**
+       Stop indexing the vector that was at x, y, z when it was inserted.
+       @return false if it wasn't indexed
+    */
+    boolean remove(int idx, double x, double y, double z) {
+        List<Integer> idxs = cells.get(key(cell(x), cell(y), cell(z)));
+        return idxs != null && idxs.remove(Integer.valueOf(idx));
+    }
+    private static long cell(double x) {
+        return (long)Math.floor(x / Eps.EPSILON);
+    }
+    /**
+       Mix a cell's indices into one key. Two cells may share a key, their
+       vectors are still compared component by component.
+    */
+    private static Long key(long i, long j, long k) {
+        return (i * 73856093L) ^ (j * 19349663L) ^ (k * 83492791L);
+    }
+    /*
+      Timer... builds revolved meshes of more and more vertices. The time
+      per vertex should hold steady as the count doubles.
+    */
+    public static void main(String[] args) {
+        for (int n=250; n<=8000; n*=2) {
+            List<Vec2> pts = new ArrayList<Vec2>();
+            for (int i=0; i<=n; ++i)
+                pts.add(new Vec2((double)i / n, 1 + .5 * Math.sin(i * .1)));
+            long t0 = System.nanoTime();
+            Mesh mesh = Mesh.revolvePolyline(pts);
+            long ns = System.nanoTime() - t0;
+            System.out.printf("%8d verts %10.2f ms %8.1f ns/vert%n",
+                              mesh.nVerts(), ns / 1e6,
+                              (double)ns / mesh.nVerts());
+        }
+    }
+}
@@ -132,7 +132,7 @@ public class HPS20Sketch extends Sketch {
                                        new Vec2(l6, r6),
                                        new Vec2(l7, r7),
                                        new Vec2(l7, 0));
-        model.add(Mesh.revolvePolyline(pts));
+        model.add(revolvePolyline(pts));
         return model;
     }
 }
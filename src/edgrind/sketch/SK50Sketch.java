@@ -192,7 +192,7 @@ public class SK50Sketch extends Sketch {
                                        new Vec2(l1, r2),
                                        new Vec2(l2, r3),
                                        new Vec2(l2, 0));
-        model.add(Mesh.revolvePolyline(pts));
+        model.add(revolvePolyline(pts));
         return model;
     }
 }
@@ -23,11 +23,14 @@ import java.awt.event.MouseEvent;
 import java.util.Map;
 //
 import java.util.List;
+import java.util.Arrays;
 import java.util.ArrayList;
 // 
 import java.lang.Comparable;
+import java.lang.ref.WeakReference;
 //
 import edgrind.Dict;
+import edgrind.Config;
 //
 import edgrind.geom.*;
 //
@@ -74,6 +77,8 @@ abstract public class Sketch extends Path2
     protected boolean visible = true;
     protected Rect2 pathRect; // in user space
     protected List<SketchDim> dims = new ArrayList<SketchDim>();
+    protected List<SketchSpecsListener> specsListeners
+        = new ArrayList<SketchSpecsListener>();
     protected final static BasicStroke stroke
         = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
     protected final static Color color = Color.white;
@@ -84,6 +89,57 @@ abstract public class Sketch extends Path2
     public Model getModel() {
         throw new NotImplementedError("getModel not implementd.");
     }
+    /** Every sketch's revolved meshes, see revolvePath(). */
+    private static MeshCache meshCache;
+    /**
+       The last mesh this sketch revolved, see revolvePath(). It's held
+       weakly, the cache and the models decide how long it lives.
+    */
+    private WeakReference<Mesh> revolved;
+    /**
+       Get the cache of revolved meshes, made on first use with a budget of
+       Config.getMeshCacheSize().
+    */
+    public static synchronized MeshCache getMeshCache() {
+        if (meshCache == null)
+            meshCache = new MeshCache(Config.getMeshCacheSize() * 1048576L);
+        return meshCache;
+    }
+    /**
+       Get the mesh of the path revolved about the z axis, see
+       Mesh.revolvePath().
+       <p>
+       The mesh is looked up in the MeshCache by this sketch's class, its
+       specs and the number of segments around the axis, and the path is
+       only revolved on a miss. So the path must be made from the specs
+       alone. Two sketches of the same class and specs get the same Mesh.
+       </p>
+       <p>
+       A miss reuses the patches of the last mesh this sketch revolved, see
+       Mesh.revolvePath(elements, previous), so after a dimension edit
+       only the segments it moved are revolved again.
+       </p>
+    */
+    protected Mesh revolvePath(List<Object> elements) {
+        MeshCache cache = getMeshCache();
+        List<Object> key = Arrays.<Object>asList(getClass(), specs.clone(),
+                                                 Mesh.N_CIRCLE_SEGS);
+        Mesh mesh = cache.get(key);
+        if (mesh == null) {
+            mesh = Mesh.revolvePath(elements,
+                                    revolved == null ? null : revolved.get());
+            cache.put(key, mesh);
+        }
+        revolved = new WeakReference<Mesh>(mesh);
+        return mesh;
+    }
+    /**
+       Get the mesh of the polyline revolved about the z axis, see
+       revolvePath().
+    */
+    protected Mesh revolvePolyline(List<Vec2> pts) {
+        return revolvePath(new ArrayList<Object>(pts));
+    }
     // 
     public Sketch(Dict specs, SketchScene scene) {
         this(specs, scene, false);
@@ -163,6 +219,9 @@ abstract public class Sketch extends Path2
         if (!didUpdate && forceUpdateProfile)
             updateProfile();
         updateDims();
+        if (didUpdate)
+            for (SketchSpecsListener l : specsListeners)
+                l.onSpecsChange(this.specs);
     }
     public void config() {
         config(null);
@@ -205,6 +264,24 @@ abstract public class Sketch extends Path2
                     r.add(d.getBBox());
         return r;
     }
+    /**
+       Add the listener.
+       <p>
+       The listener will be notified after config() has changed the
+       sketch's specs.
+       </p>
+    */
+    public void addSpecsListener(SketchSpecsListener l) {
+        specsListeners.add(l);
+    }
+    /**
+       Remove the listener.
+
+       If the listener has not been added, do nothing.
+    */
+    public void removeSpecsListener(SketchSpecsListener l) {
+        specsListeners.remove(l);
+    }
     @Override
     public int compareTo(Sketch s) {
         return zValue - s.zValue;
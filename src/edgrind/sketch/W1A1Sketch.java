@@ -219,13 +219,13 @@ public class W1A1Sketch extends WheelSketch {
         double l1 = specs.doubleAt("l1");
         double r1 = specs.doubleAt("r1");
         double cy = d1 / 2 - r1;
-        model.add(Mesh.revolvePath(Util.objList(new Vec2(0, 0),
-                                                new Vec2(0, d1 / 2 - r1),
-                                                new Arc2(r1, cy, r1, 180, -90),
-                                                new Vec2(l1 - r1, d1 / 2),
-                                                new Arc2(l1 - r1, cy, r1, 90,
-                                                         -90),
-                                                new Vec2(l1, 0))));
+        model.add(revolvePath(Util.objList(new Vec2(0, 0),
+                                           new Vec2(0, d1 / 2 - r1),
+                                           new Arc2(r1, cy, r1, 180, -90),
+                                           new Vec2(l1 - r1, d1 / 2),
+                                           new Arc2(l1 - r1, cy, r1, 90,
+                                                    -90),
+                                           new Vec2(l1, 0))));
         return model;
     }
 }
@@ -159,16 +159,16 @@ public class WheelAdapterSketch extends Sketch {
         double l2 = specs.doubleAt("l2");
         double l3 = specs.doubleAt("l3");
         double l4 = specs.doubleAt("l4");
-        model.add(Mesh.revolvePath(Util.objList(new Vec2(0, 0),
-                                                new Vec2(0, r1),
-                                                new Vec2(l1, r1),
-                                                new Vec2(l1, r2),
-                                                new Vec2(l2, r2),
-                                                new Vec2(l2, r3),
-                                                new Vec2(l3, r3),
-                                                new Vec2(l3, r4),
-                                                new Vec2(l3 + l4, r4),
-                                                new Vec2(l3 + l4, 0))));
+        model.add(revolvePath(Util.objList(new Vec2(0, 0),
+                                           new Vec2(0, r1),
+                                           new Vec2(l1, r1),
+                                           new Vec2(l1, r2),
+                                           new Vec2(l2, r2),
+                                           new Vec2(l2, r3),
+                                           new Vec2(l3, r3),
+                                           new Vec2(l3, r4),
+                                           new Vec2(l3 + l4, r4),
+                                           new Vec2(l3 + l4, 0))));
         return model;
     }
 }